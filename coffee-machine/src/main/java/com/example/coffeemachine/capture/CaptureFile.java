@@ -0,0 +1,107 @@
+package com.example.coffeemachine.capture;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary layout of a traffic capture. A header is followed by one variable-length record per request:
+ * <pre>
+ * header: int magic "VCAP" | short format version | long capture start (epoch millis)
+ * record: long offset (nanos) | int duration (micros) | short status | string method | string path | string query
+ *         | byte header count | (string name | string value)* | int body length | body
+ * string: int length | UTF-8 bytes
+ * </pre>
+ * Strings carry an int length rather than {@link DataOutputStream#writeUTF}'s 64 KB one, so a long query or
+ * header cannot make a record unwritable. A record cut short by a crash is ignored when reading.
+ */
+public final class CaptureFile {
+    static final int MAGIC = 0x56434150;
+    static final short FORMAT_VERSION = 2;
+
+    private CaptureFile() {
+    }
+
+    static void writeHeader(DataOutputStream out, long startedAtMillis) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        out.writeLong(startedAtMillis);
+    }
+
+    static void write(DataOutputStream out, CapturedRequest request) throws IOException {
+        out.writeLong(request.offsetNanos());
+        out.writeInt(request.durationMicros());
+        out.writeShort(request.status());
+        writeString(out, request.method());
+        writeString(out, request.path());
+        writeString(out, request.query());
+        out.writeByte(request.headers().size());
+        for (Map.Entry<String, String> header : request.headers().entrySet()) {
+            writeString(out, header.getKey());
+            writeString(out, header.getValue());
+        }
+        out.writeInt(request.body().length);
+        out.write(request.body());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static List<CapturedRequest> read(Path path) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a traffic capture", path));
+            }
+            short version = in.readShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(String.format("Unsupported capture format %d in %s", version, path));
+            }
+            in.readLong();
+            List<CapturedRequest> requests = new ArrayList<>();
+            try {
+                while (true) {
+                    requests.add(read(in));
+                }
+            } catch (EOFException endOfCapture) {
+                return requests;
+            }
+        }
+    }
+
+    private static CapturedRequest read(DataInputStream in) throws IOException {
+        long offsetNanos = in.readLong();
+        int durationMicros = in.readInt();
+        int status = in.readUnsignedShort();
+        String method = readString(in);
+        String path = readString(in);
+        String query = readString(in);
+        int headerCount = in.readUnsignedByte();
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readString(in), readString(in));
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CapturedRequest(offsetNanos, durationMicros, status, method, path, query, headers, body);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.coffeemachine.capture;
+
+import java.util.Map;
+
+/**
+ * One captured API call: when it arrived relative to the start of the capture, how long it took and
+ * everything needed to send it again.
+ */
+public record CapturedRequest(long offsetNanos, int durationMicros, int status, String method, String path,
+                              String query, Map<String, String> headers, byte[] body) {
+
+    public String uri() {
+        return query.isEmpty() ? path : path + "?" + query;
+    }
+
+    /**
+     * The endpoint with numeric path segments replaced, so latencies can be grouped per endpoint.
+     */
+    public String endpoint() {
+        return method + " " + path.replaceAll("/\\d+(?=/|$)", "/{id}");
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.coffeemachine.capture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What one instance answered to every request of a capture, by position in the capture.
+ */
+public final class ReplayResult {
+    /** Status recorded for a request that got no response. */
+    public static final int NO_RESPONSE = -1;
+
+    private final int[] statuses;
+    private final long[] latencyNanos;
+    private final long[] responseHashes;
+    private final boolean hashedBodies;
+
+    ReplayResult(int size) {
+        this(size, true);
+    }
+
+    private ReplayResult(int size, boolean hashedBodies) {
+        statuses = new int[size];
+        latencyNanos = new long[size];
+        responseHashes = new long[size];
+        this.hashedBodies = hashedBodies;
+    }
+
+    /**
+     * The statuses and latencies the capture itself recorded, to compare a single replay with production.
+     * A capture holds no response bodies.
+     */
+    static ReplayResult captured(List<CapturedRequest> requests) {
+        ReplayResult result = new ReplayResult(requests.size(), false);
+        for (int i = 0; i < requests.size(); i++) {
+            result.record(i, requests.get(i).status(), requests.get(i).durationMicros() * 1000L, 0);
+        }
+        return result;
+    }
+
+    void record(int index, int status, long latency, long responseHash) {
+        statuses[index] = status;
+        latencyNanos[index] = latency;
+        responseHashes[index] = responseHash;
+    }
+
+    public int size() {
+        return statuses.length;
+    }
+
+    public int status(int index) {
+        return statuses[index];
+    }
+
+    public long latencyNanos(int index) {
+        return latencyNanos[index];
+    }
+
+    public long responseHash(int index) {
+        return responseHashes[index];
+    }
+
+    /**
+     * Indexes of the requests whose status or response body differ between the two results, or that got no
+     * response in either. Bodies are only compared when both results hashed them.
+     */
+    public List<Integer> differences(ReplayResult other) {
+        boolean compareBodies = hashedBodies && other.hashedBodies;
+        List<Integer> differences = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            if (statuses[i] == NO_RESPONSE || statuses[i] != other.statuses[i]
+                    || compareBodies && responseHashes[i] != other.responseHashes[i]) {
+                differences.add(i);
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Sorted latencies per endpoint, in capture order of first appearance.
+     */
+    public Map<String, long[]> latenciesByEndpoint(List<CapturedRequest> requests) {
+        Map<String, List<Long>> grouped = new LinkedHashMap<>();
+        for (int i = 0; i < size(); i++) {
+            if (statuses[i] != NO_RESPONSE) {
+                grouped.computeIfAbsent(requests.get(i).endpoint(), e -> new ArrayList<>()).add(latencyNanos[i]);
+            }
+        }
+        Map<String, long[]> sorted = new LinkedHashMap<>();
+        grouped.forEach((endpoint, latencies) -> {
+            long[] values = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(values);
+            sorted.put(endpoint, values);
+        });
+        return sorted;
+    }
+
+    public static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.max(0, Math.ceil(quantile * sorted.length) - 1)];
+    }
+}
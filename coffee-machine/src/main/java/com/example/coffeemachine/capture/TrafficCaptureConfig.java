@@ -0,0 +1,23 @@
+package com.example.coffeemachine.capture;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+@ConditionalOnProperty(prefix = "vending.capture", name = "enabled", havingValue = "true")
+public class TrafficCaptureConfig {
+
+    @Bean
+    public FilterRegistrationBean<TrafficCaptureFilter> trafficCaptureFilter(TrafficCaptureWriter writer,
+                                                                             TrafficCaptureProperties properties) {
+        FilterRegistrationBean<TrafficCaptureFilter> registration =
+                new FilterRegistrationBean<>(new TrafficCaptureFilter(writer, properties.getMaxBodyBytes()));
+        registration.addUrlPatterns("/api/vending/*");
+        // Outermost, so the recorded duration covers the other filters too
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.coffeemachine.capture;
+
+import com.example.coffeemachine.cluster.ClusterRoutingInterceptor;
+import com.example.coffeemachine.datasource.ReadConsistencyInterceptor;
+import com.example.coffeemachine.web.MachineContextInterceptor;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records every API call for {@link TrafficReplayer}. The body is kept as the controller reads it, and the
+ * record is handed to {@link TrafficCaptureWriter} after the response, so a request pays for a copy of its
+ * body and a queue offer. Requests forwarded by another node were already captured there and are skipped.
+ */
+public class TrafficCaptureFilter extends OncePerRequestFilter {
+    private static final List<String> CAPTURED_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT,
+            "Prefer", MachineContextInterceptor.HEADER, ReadConsistencyInterceptor.HEADER);
+
+    private final TrafficCaptureWriter writer;
+    private final int maxBodyBytes;
+
+    public TrafficCaptureFilter(TrafficCaptureWriter writer, int maxBodyBytes) {
+        this.writer = writer;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (request.getHeader(ClusterRoutingInterceptor.FORWARDED_HEADER) != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        ContentCachingRequestWrapper cachingRequest = new ContentCachingRequestWrapper(request, maxBodyBytes);
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(cachingRequest, response);
+        } finally {
+            long duration = System.nanoTime() - start;
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (String name : CAPTURED_HEADERS) {
+                String value = request.getHeader(name);
+                if (value != null) {
+                    headers.put(name, value);
+                }
+            }
+            writer.offer(new CapturedRequest(writer.offsetNanos(start), (int) Math.min(Integer.MAX_VALUE, duration / 1000),
+                    response.getStatus(), request.getMethod(), request.getRequestURI(),
+                    request.getQueryString() == null ? "" : request.getQueryString(), headers,
+                    cachingRequest.getContentAsByteArray()));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.coffeemachine.capture;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "vending.capture")
+public class TrafficCaptureProperties {
+    private boolean enabled = false;
+    private String path = System.getProperty("java.io.tmpdir") + "/vending-traffic.capture";
+    /** Requests waiting for the writer; requests beyond this are dropped rather than slowing the response. */
+    private int queueCapacity = 65_536;
+    /** Longer request bodies are truncated. */
+    private int maxBodyBytes = 4096;
+}
@@ -0,0 +1,90 @@
+package com.example.coffeemachine.capture;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends captured requests to the capture file on a background thread. Request threads only offer to a
+ * bounded queue; when the writer falls behind, requests are dropped and counted instead of waiting.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.capture", name = "enabled", havingValue = "true")
+public class TrafficCaptureWriter {
+    private final BlockingQueue<CapturedRequest> queue;
+    private final DataOutputStream out;
+    private final Thread thread;
+    private final long startedAtNanos = System.nanoTime();
+    private final Counter captured;
+    private final Counter dropped;
+    private volatile boolean running = true;
+
+    public TrafficCaptureWriter(TrafficCaptureProperties properties, MeterRegistry meterRegistry) throws IOException {
+        Path path = Path.of(properties.getPath()).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+        CaptureFile.writeHeader(out, System.currentTimeMillis());
+        this.captured = meterRegistry.counter("vending.capture.requests", "outcome", "captured");
+        this.dropped = meterRegistry.counter("vending.capture.requests", "outcome", "dropped");
+        this.thread = new Thread(this::drain, "traffic-capture-writer");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Capturing API traffic to {}", path);
+    }
+
+    /**
+     * Nanoseconds since the capture started, the time base of {@link CapturedRequest#offsetNanos()}.
+     */
+    public long offsetNanos(long nanoTime) {
+        return nanoTime - startedAtNanos;
+    }
+
+    public void offer(CapturedRequest request) {
+        if (running && queue.offer(request)) {
+            captured.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Writes the requests still queued and closes the file.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void drain() {
+        try (out) {
+            while (running || !queue.isEmpty()) {
+                CapturedRequest request = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (request == null) {
+                    out.flush();
+                    continue;
+                }
+                CaptureFile.write(out, request);
+            }
+        } catch (IOException ex) {
+            running = false;
+            log.error("Traffic capture stopped, the capture file could not be written", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.coffeemachine.capture;
+
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.web.MachineContextInterceptor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Plays a traffic capture against a running instance, keeping the original arrival times, optionally sped
+ * up. Requests for the same machine go out one after the other in capture order, so every replay drives each
+ * machine through the same states. Different machines run concurrently as they did in production.
+ * <p>
+ * Replaying against a baseline and a candidate build compares their latency per endpoint and every response.
+ * Both instances must start from the same data. The exit status is 1 when responses differ, a request got no
+ * response or a p99 regressed by more than {@code --max-p99-regression}:
+ * <pre>
+ * java -cp target/classes:$(cat classpath.txt) com.example.coffeemachine.capture.TrafficReplayer \
+ *     --capture=vending-traffic.capture --baseline=http://localhost:8080 --candidate=http://localhost:8081 --speed=2
+ * </pre>
+ * Without a candidate, the baseline is compared with the statuses and latencies recorded in the capture.
+ */
+public final class TrafficReplayer {
+    /**
+     * Values that change from run to run and would make identical responses look different: timestamps, ticket
+     * UUIDs and generated product ids, both as JSON fields and in error messages.
+     */
+    private static final Pattern VOLATILE = Pattern.compile(
+            "\"timestamp\"\\s*:\\s*\"[^\"]*\"|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}"
+                    + "|\"id\"\\s*:\\s*\\d+|\\bIDs? \\[?[0-9, ]*[0-9]\\]?");
+    private static final int MIN_SAMPLES_FOR_GATE = 20;
+    private static final int REPORTED_DIFFERENCES = 20;
+
+    private final List<CapturedRequest> requests;
+    private final double speed;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    public TrafficReplayer(List<CapturedRequest> requests, double speed) {
+        List<CapturedRequest> ordered = new ArrayList<>(requests);
+        ordered.sort(Comparator.comparingLong(CapturedRequest::offsetNanos));
+        this.requests = List.copyOf(ordered);
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException(String.format("Expected --name=value but got %s", arg));
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        if (!options.containsKey("capture") || !options.containsKey("baseline")) {
+            throw new IllegalArgumentException("Usage: --capture=<file> --baseline=<url> [--candidate=<url>] [--speed=1] [--max-p99-regression=0.2]");
+        }
+        TrafficReplayer replayer = new TrafficReplayer(CaptureFile.read(Path.of(options.get("capture"))),
+                Double.parseDouble(options.getOrDefault("speed", "1")));
+        double maxRegression = Double.parseDouble(options.getOrDefault("max-p99-regression", "0.2"));
+
+        ReplayResult baseline = replayer.replay(URI.create(options.get("baseline")));
+        boolean passed;
+        if (options.containsKey("candidate")) {
+            ReplayResult candidate = replayer.replay(URI.create(options.get("candidate")));
+            passed = replayer.compare(baseline, candidate, "baseline", "candidate", maxRegression, System.out);
+            passed &= replayer.reportDifferences(baseline, candidate, System.out);
+        } else {
+            ReplayResult captured = ReplayResult.captured(replayer.requests);
+            passed = replayer.compare(captured, baseline, "capture", "replay", maxRegression, System.out);
+            passed &= replayer.reportDifferences(captured, baseline, System.out);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    public List<CapturedRequest> getRequests() {
+        return requests;
+    }
+
+    public ReplayResult replay(URI baseUri) {
+        ReplayResult result = new ReplayResult(requests.size());
+        Map<String, CompletableFuture<Void>> machines = new HashMap<>();
+        long firstOffset = requests.isEmpty() ? 0 : requests.get(0).offsetNanos();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            CapturedRequest request = requests.get(i);
+            long due = start + (long) ((request.offsetNanos() - firstOffset) / speed);
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = i;
+            String machineId = request.headers().getOrDefault(MachineContextInterceptor.HEADER, MachineContext.DEFAULT_MACHINE_ID);
+            CompletableFuture<Void> previous = machines.get(machineId);
+            machines.put(machineId, previous == null
+                    ? send(baseUri, request, index, result)
+                    : previous.thenCompose(done -> send(baseUri, request, index, result)));
+        }
+        CompletableFuture.allOf(machines.values().toArray(CompletableFuture[]::new)).join();
+        return result;
+    }
+
+    /**
+     * Prints p50, p99 and max per endpoint for both results.
+     *
+     * @return false when an endpoint with enough samples regressed its p99 by more than {@code maxRegression}
+     */
+    public boolean compare(ReplayResult before, ReplayResult after, String beforeName, String afterName,
+                           double maxRegression, PrintStream out) {
+        Map<String, long[]> beforeLatencies = before.latenciesByEndpoint(requests);
+        Map<String, long[]> afterLatencies = after.latenciesByEndpoint(requests);
+        boolean passed = true;
+        out.printf("%-42s %7s %21s %21s %21s %8s%n", "endpoint", "count", "p50 ms", "p99 ms", "max ms", "p99");
+        out.printf("%-42s %7s %21s %21s %21s%n", "", "", beforeName + " / " + afterName, "", "");
+        for (Map.Entry<String, long[]> entry : afterLatencies.entrySet()) {
+            long[] was = beforeLatencies.getOrDefault(entry.getKey(), new long[0]);
+            long[] is = entry.getValue();
+            long wasP99 = ReplayResult.percentile(was, 0.99);
+            long isP99 = ReplayResult.percentile(is, 0.99);
+            double change = wasP99 == 0 ? 0 : (double) (isP99 - wasP99) / wasP99;
+            boolean regressed = is.length >= MIN_SAMPLES_FOR_GATE && change > maxRegression;
+            passed &= !regressed;
+            out.printf("%-42s %7d %21s %21s %21s %+7.1f%%%s%n", entry.getKey(), is.length,
+                    pair(ReplayResult.percentile(was, 0.5), ReplayResult.percentile(is, 0.5)),
+                    pair(wasP99, isP99), pair(ReplayResult.percentile(was, 1), ReplayResult.percentile(is, 1)),
+                    100 * change, regressed ? " REGRESSED" : "");
+        }
+        return passed;
+    }
+
+    /**
+     * Prints the requests that got a different status or body, or no response.
+     *
+     * @return true when every request got a response and every response matched
+     */
+    public boolean reportDifferences(ReplayResult baseline, ReplayResult candidate, PrintStream out) {
+        List<Integer> differences = baseline.differences(candidate);
+        out.printf("%d of %d responses identical%n", requests.size() - differences.size(), requests.size());
+        for (int index : differences.subList(0, Math.min(REPORTED_DIFFERENCES, differences.size()))) {
+            CapturedRequest request = requests.get(index);
+            out.printf("  #%d %s %s: status %s -> %s%s%n", index, request.method(), request.uri(),
+                    describe(baseline.status(index)), describe(candidate.status(index)),
+                    baseline.status(index) == candidate.status(index) && baseline.status(index) != ReplayResult.NO_RESPONSE
+                            ? ", body differs" : "");
+        }
+        return differences.isEmpty();
+    }
+
+    private CompletableFuture<Void> send(URI baseUri, CapturedRequest request, int index, ReplayResult result) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(request.uri()))
+                .timeout(Duration.ofSeconds(30))
+                .method(request.method(), request.body().length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(request.body()));
+        request.headers().forEach(builder::header);
+        long sentAt = System.nanoTime();
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenAccept(response -> result.record(index, response.statusCode(), System.nanoTime() - sentAt, hash(response.body())))
+                .exceptionally(ex -> {
+                    result.record(index, ReplayResult.NO_RESPONSE, System.nanoTime() - sentAt, 0);
+                    return null;
+                });
+    }
+
+    static long hash(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(VOLATILE.matcher(new String(body, StandardCharsets.UTF_8)).replaceAll("").getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static String describe(int status) {
+        return status == ReplayResult.NO_RESPONSE ? "none" : String.valueOf(status);
+    }
+
+    private static String pair(long beforeNanos, long afterNanos) {
+        return String.format("%.2f / %.2f", beforeNanos / 1e6, afterNanos / 1e6);
+    }
+}
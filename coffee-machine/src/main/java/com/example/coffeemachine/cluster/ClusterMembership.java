@@ -0,0 +1,116 @@
+package com.example.coffeemachine.cluster;
+
+import com.example.coffeemachine.datasource.ReadConsistency;
+import com.example.coffeemachine.entity.ClusterNode;
+import com.example.coffeemachine.exception.MachineHandoffException;
+import com.example.coffeemachine.repository.ClusterNodeRepository;
+import com.example.coffeemachine.state.MachineState;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps this node's heartbeat in {@code cluster_nodes} and derives machine ownership from the live
+ * nodes. When the ring changes, machines that moved away are checkpointed and released, so the new
+ * owner can claim them from the database.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.cluster", name = "enabled", havingValue = "true")
+public class ClusterMembership {
+    private final ClusterProperties properties;
+    private final ClusterNodeRepository nodeRepository;
+    private final MachineStateHandoff handoff;
+    private final MachineState machineState;
+    private final TaskScheduler taskScheduler;
+
+    private volatile ConsistentHashRing ring;
+    private volatile Map<String, String> nodeUrls;
+
+    public ClusterMembership(ClusterProperties properties, ClusterNodeRepository nodeRepository,
+                             MachineStateHandoff handoff, MachineState machineState, TaskScheduler taskScheduler) {
+        if (properties.getNodeId() == null || properties.getAdvertisedUrl() == null) {
+            throw new IllegalStateException("vending.cluster.node-id and vending.cluster.advertised-url are required in cluster mode");
+        }
+        this.properties = properties;
+        this.nodeRepository = nodeRepository;
+        this.handoff = handoff;
+        this.machineState = machineState;
+        this.taskScheduler = taskScheduler;
+        this.ring = new ConsistentHashRing(Set.of(properties.getNodeId()), properties.getVirtualNodes());
+        this.nodeUrls = Map.of(properties.getNodeId(), properties.getAdvertisedUrl());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        taskScheduler.scheduleWithFixedDelay(this::heartbeat, properties.getHeartbeatInterval());
+    }
+
+    public void heartbeat() {
+        Instant now = Instant.now();
+        // A lagging replica could miss a node's latest heartbeat and drop it from the ring.
+        List<ClusterNode> liveNodes = ReadConsistency.onPrimary(() -> {
+            nodeRepository.save(new ClusterNode(properties.getNodeId(), properties.getAdvertisedUrl(), now));
+            return nodeRepository.findByLastHeartbeatAfter(now.minus(properties.getNodeTimeout()));
+        });
+        nodeUrls = liveNodes.stream().collect(Collectors.toUnmodifiableMap(ClusterNode::getNodeId, ClusterNode::getUrl));
+
+        ConsistentHashRing next = new ConsistentHashRing(nodeUrls.keySet(), properties.getVirtualNodes());
+        if (!next.getNodes().equals(ring.getNodes())) {
+            log.info("Cluster membership changed from {} to {}", ring.getNodes(), next.getNodes());
+            ring = next;
+        }
+        rebalance();
+    }
+
+    public boolean isLocal(String machineId) {
+        return properties.getNodeId().equals(ring.ownerOf(machineId));
+    }
+
+    public String ownerUrl(String machineId) {
+        return nodeUrls.get(ring.ownerOf(machineId));
+    }
+
+    /**
+     * Claims the machine on first use by its owner. Throws {@link MachineHandoffException} while the
+     * previous owner still holds it.
+     */
+    public void ensureOwned(String machineId) {
+        if (!handoff.isClaimed(machineId)) {
+            handoff.claim(machineId);
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        nodeRepository.deleteById(properties.getNodeId());
+        machineState.getLoadedMachineIds().forEach(handoff::release);
+        log.info("Node {} left the cluster", properties.getNodeId());
+    }
+
+    private void rebalance() {
+        for (String machineId : machineState.getLoadedMachineIds()) {
+            try {
+                if (!isLocal(machineId)) {
+                    handoff.release(machineId);
+                } else if (handoff.isClaimed(machineId)) {
+                    handoff.checkpoint(machineId);
+                }
+            } catch (MachineHandoffException ex) {
+                log.debug("Machine {} is not released by its previous owner yet", machineId);
+            } catch (RuntimeException ex) {
+                log.warn("Could not rebalance machine {}", machineId, ex);
+            }
+        }
+    }
+}
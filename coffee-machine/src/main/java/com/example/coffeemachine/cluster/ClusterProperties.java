@@ -0,0 +1,34 @@
+package com.example.coffeemachine.cluster;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "vending.cluster")
+public class ClusterProperties {
+    private boolean enabled = false;
+    private String nodeId;
+    /** Base URL other nodes use to reach this one, e.g. http://10.0.0.5:8080. */
+    private String advertisedUrl;
+    private Duration heartbeatInterval = Duration.ofSeconds(2);
+    private Duration nodeTimeout = Duration.ofSeconds(10);
+    private int virtualNodes = 128;
+    private RoutingMode routingMode = RoutingMode.FORWARD;
+    private Duration forwardTimeout = Duration.ofSeconds(10);
+    /** Endpoints that touch per-machine state and therefore must run on the owning node. */
+    private List<String> machineAffinePaths = List.of(
+            "/api/vending/coins/**",
+            "/api/vending/products/*/buy",
+            "/api/vending/state/**",
+            "/api/vending/state",
+            "/api/vending/tickets/**",
+            "/api/vending/service-visit");
+
+    public enum RoutingMode {
+        FORWARD,
+        REDIRECT
+    }
+}
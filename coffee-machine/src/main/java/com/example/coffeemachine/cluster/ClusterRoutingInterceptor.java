@@ -0,0 +1,90 @@
+package com.example.coffeemachine.cluster;
+
+import com.example.coffeemachine.datasource.ReadConsistencyInterceptor;
+import com.example.coffeemachine.exception.MachineHandoffException;
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.web.MachineContextInterceptor;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+/**
+ * Sends machine-affine requests to the node that owns the machine, either by proxying them or by
+ * answering with a 307 redirect. Requests that were already forwarded once are always served locally.
+ */
+@Slf4j
+public class ClusterRoutingInterceptor implements HandlerInterceptor {
+    public static final String FORWARDED_HEADER = "X-Vending-Forwarded-By";
+    private static final List<String> FORWARDED_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT, MachineContextInterceptor.HEADER, ReadConsistencyInterceptor.HEADER);
+
+    private final ClusterProperties properties;
+    private final ClusterMembership membership;
+    private final HttpClient httpClient;
+
+    public ClusterRoutingInterceptor(ClusterProperties properties, ClusterMembership membership) {
+        this.properties = properties;
+        this.membership = membership;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(properties.getForwardTimeout())
+                .build();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        String machineId = MachineContext.currentMachineId();
+        if (membership.isLocal(machineId) || request.getHeader(FORWARDED_HEADER) != null) {
+            membership.ensureOwned(machineId);
+            return true;
+        }
+        String ownerUrl = membership.ownerUrl(machineId);
+        if (ownerUrl == null) {
+            throw new MachineHandoffException(machineId);
+        }
+        String target = ownerUrl + request.getRequestURI()
+                + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+        if (properties.getRoutingMode() == ClusterProperties.RoutingMode.REDIRECT) {
+            response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+            response.setHeader(HttpHeaders.LOCATION, target);
+            return false;
+        }
+        forward(request, response, target, machineId);
+        return false;
+    }
+
+    private void forward(HttpServletRequest request, HttpServletResponse response, String target, String machineId) throws IOException {
+        HttpRequest.Builder forwarded = HttpRequest.newBuilder(URI.create(target))
+                .timeout(properties.getForwardTimeout())
+                .header(FORWARDED_HEADER, properties.getNodeId())
+                .method(request.getMethod(), HttpRequest.BodyPublishers.ofByteArray(request.getInputStream().readAllBytes()));
+        for (String header : FORWARDED_HEADERS) {
+            String value = request.getHeader(header);
+            if (value != null) {
+                forwarded.header(header, value);
+            }
+        }
+        try {
+            HttpResponse<byte[]> owner = httpClient.send(forwarded.build(), HttpResponse.BodyHandlers.ofByteArray());
+            response.setStatus(owner.statusCode());
+            owner.headers().firstValue(HttpHeaders.CONTENT_TYPE).ifPresent(response::setContentType);
+            owner.headers().firstValue(HttpHeaders.RETRY_AFTER).ifPresent(value -> response.setHeader(HttpHeaders.RETRY_AFTER, value));
+            response.getOutputStream().write(owner.body());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MachineHandoffException(machineId);
+        } catch (IOException ex) {
+            log.warn("Forwarding {} to {} failed", request.getRequestURI(), target, ex);
+            throw new MachineHandoffException(machineId);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.coffeemachine.cluster;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "vending.cluster", name = "enabled", havingValue = "true")
+public class ClusterWebConfig implements WebMvcConfigurer {
+    private final ClusterProperties properties;
+    private final ClusterMembership membership;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Runs after MachineContextInterceptor, which resolves the machine id.
+        registry.addInterceptor(new ClusterRoutingInterceptor(properties, membership))
+                .addPathPatterns(properties.getMachineAffinePaths())
+                .order(1);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.coffeemachine.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hash ring. Each node is placed at {@code virtualNodes} points, so adding or
+ * removing a node only moves about {@code 1/n} of the keys.
+ */
+public final class ConsistentHashRing {
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = Set.copyOf(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public String ownerOf(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    /** 64-bit FNV-1a followed by the MurmurHash3 finalizer to spread nearby keys across the ring. */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.coffeemachine.cluster;
+
+import com.example.coffeemachine.command.MachineCommandQueue;
+import com.example.coffeemachine.entity.MachineSession;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.MachineHandoffException;
+import com.example.coffeemachine.repository.MachineSessionRepository;
+import com.example.coffeemachine.state.MachineSnapshot;
+import com.example.coffeemachine.state.MachineState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the session and coin state of a machine between nodes through the {@code machine_sessions} table.
+ * A node has to claim a session row before it serves the machine, and writes the state back when it
+ * checkpoints or gives the machine up. Giving it up fences the local state first, so requests still running
+ * on this node cannot change what the next owner restores. Writes only go through while this node still owns
+ * the row; if another node has taken it, the local state is fenced instead.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.cluster", name = "enabled", havingValue = "true")
+public class MachineStateHandoff {
+    private final ClusterProperties properties;
+    private final MachineSessionRepository sessionRepository;
+    private final MachineState machineState;
+    private final ObjectProvider<MachineCommandQueue> commandQueue;
+    private final Map<String, Long> savedVersions = new ConcurrentHashMap<>();
+
+    public MachineStateHandoff(ClusterProperties properties, MachineSessionRepository sessionRepository, MachineState machineState,
+                               ObjectProvider<MachineCommandQueue> commandQueue) {
+        this.properties = properties;
+        this.sessionRepository = sessionRepository;
+        this.machineState = machineState;
+        this.commandQueue = commandQueue;
+    }
+
+    public boolean isClaimed(String machineId) {
+        return savedVersions.containsKey(machineId);
+    }
+
+    @Transactional
+    public synchronized void claim(String machineId) {
+        if (isClaimed(machineId)) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(properties.getNodeTimeout());
+        if (sessionRepository.claim(machineId, properties.getNodeId(), cutoff) == 0) {
+            if (sessionRepository.existsById(machineId)) {
+                throw new MachineHandoffException(machineId);
+            }
+            try {
+                MachineSnapshot snapshot = machineState.snapshot(machineId);
+                MachineSession session = toSession(machineId, snapshot);
+                session.setOwnerNodeId(properties.getNodeId());
+                sessionRepository.saveAndFlush(session);
+                machineState.restore(machineId, snapshot, null);
+            } catch (DataIntegrityViolationException ex) {
+                throw new MachineHandoffException(machineId);
+            }
+        } else {
+            MachineSession session = sessionRepository.findById(machineId).orElseThrow();
+            machineState.restore(machineId, toSnapshot(session), session.getUpdatedAt());
+        }
+        savedVersions.put(machineId, machineState.snapshot(machineId).version());
+        commandQueue.ifAvailable(queue -> queue.open(machineId));
+        log.info("Node {} now owns machine {}", properties.getNodeId(), machineId);
+    }
+
+    @Transactional
+    public void checkpoint(String machineId) {
+        Long savedVersion = savedVersions.get(machineId);
+        MachineSnapshot snapshot = machineState.snapshot(machineId);
+        if (savedVersion == null || savedVersion == snapshot.version()) {
+            return;
+        }
+        if (!saveIfOwned(machineId, snapshot, properties.getNodeId())) {
+            machineState.fence(machineId);
+            savedVersions.remove(machineId);
+            log.warn("Machine {} was claimed by another node; fenced its local state", machineId);
+            return;
+        }
+        savedVersions.put(machineId, snapshot.version());
+    }
+
+    /**
+     * Runs the machine's queued commands, fences its state against later writes and saves it for the next owner.
+     */
+    @Transactional
+    public synchronized void release(String machineId) {
+        commandQueue.ifAvailable(queue -> queue.close(machineId));
+        MachineSnapshot snapshot = machineState.fence(machineId);
+        if (savedVersions.remove(machineId) == null || snapshot == null) {
+            return;
+        }
+        if (!saveIfOwned(machineId, snapshot, null)) {
+            log.warn("Machine {} was claimed by another node before this one handed it off", machineId);
+            return;
+        }
+        log.info("Node {} handed machine {} off", properties.getNodeId(), machineId);
+    }
+
+    public Set<String> getClaimedMachineIds() {
+        return Set.copyOf(savedVersions.keySet());
+    }
+
+    private boolean saveIfOwned(String machineId, MachineSnapshot snapshot, String newOwner) {
+        MachineSession session = toSession(machineId, snapshot);
+        return sessionRepository.saveIfOwned(machineId, properties.getNodeId(), newOwner, session.getInsertedCoins(),
+                session.getAvailableChange(), session.getStateVersion()) > 0;
+    }
+
+    private static MachineSession toSession(String machineId, MachineSnapshot snapshot) {
+        MachineSession session = new MachineSession(machineId);
+        session.setInsertedCoins(snapshot.insertedCoins().stream()
+                .map(CoinEnum::name)
+                .collect(Collectors.joining(",")));
+        session.setAvailableChange(snapshot.availableChange().entrySet().stream()
+                .map(e -> e.getKey().name() + "=" + e.getValue())
+                .collect(Collectors.joining(",")));
+        session.setStateVersion(snapshot.version());
+        session.setUpdatedAt(Instant.now());
+        return session;
+    }
+
+    private static MachineSnapshot toSnapshot(MachineSession session) {
+        List<CoinEnum> insertedCoins = Arrays.stream(session.getInsertedCoins().split(","))
+                .filter(name -> !name.isBlank())
+                .map(CoinEnum::valueOf)
+                .toList();
+        Map<CoinEnum, Integer> availableChange = new EnumMap<>(CoinEnum.class);
+        Arrays.stream(session.getAvailableChange().split(","))
+                .filter(entry -> !entry.isBlank())
+                .map(entry -> entry.split("="))
+                .forEach(entry -> availableChange.put(CoinEnum.valueOf(entry[0]), Integer.parseInt(entry[1])));
+        return new MachineSnapshot(session.getStateVersion(), insertedCoins, availableChange);
+    }
+}
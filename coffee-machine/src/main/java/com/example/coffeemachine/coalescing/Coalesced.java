@@ -0,0 +1,16 @@
+package com.example.coffeemachine.coalescing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read-only service method whose concurrent calls with equal arguments may share one execution
+ * and its result. The value names the operation in {@code vending.coalescing.operations} and in metrics.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Coalesced {
+    String value();
+}
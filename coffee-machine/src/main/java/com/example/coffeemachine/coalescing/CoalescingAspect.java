@@ -0,0 +1,72 @@
+package com.example.coffeemachine.coalescing;
+
+import com.example.coffeemachine.datasource.ReadConsistency;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces concurrent calls to {@link Coalesced} methods. It runs before the concurrency limiter and the
+ * transaction interceptor, so callers that join a flight take neither a limiter slot nor a connection.
+ * Reads pinned to the primary with {@link ReadConsistency} only share flights with each other.
+ */
+@Aspect
+@Component
+@Order(-1)
+@ConditionalOnProperty(prefix = "vending.coalescing", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CoalescingAspect {
+    private final CoalescingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final SingleFlight<List<Object>, Object> singleFlight = new SingleFlight<>();
+    private final Map<String, Counter> executed = new ConcurrentHashMap<>();
+    private final Map<String, Counter> coalesced = new ConcurrentHashMap<>();
+
+    public CoalescingAspect(CoalescingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("@annotation(coalescedCall)")
+    public Object coalesce(ProceedingJoinPoint joinPoint, Coalesced coalescedCall) throws Throwable {
+        String operation = coalescedCall.value();
+        if (!properties.isEnabled(operation)) {
+            return joinPoint.proceed();
+        }
+        List<Object> key = List.of(operation, ReadConsistency.isPrimaryRequired(), Arrays.asList(joinPoint.getArgs()));
+        SingleFlight.Result<Object> result;
+        try {
+            result = singleFlight.execute(key, () -> {
+                try {
+                    return joinPoint.proceed();
+                } catch (RuntimeException | Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    throw new UndeclaredThrowableException(ex);
+                }
+            });
+        } catch (UndeclaredThrowableException ex) {
+            throw ex.getUndeclaredThrowable();
+        }
+        counter(result.coalesced() ? coalesced : executed, operation, result.coalesced()).increment();
+        return result.value();
+    }
+
+    private Counter counter(Map<String, Counter> counters, String operation, boolean shared) {
+        return counters.computeIfAbsent(operation, op -> Counter.builder("vending.coalescing.calls")
+                .description("Coalesced service calls, by whether they ran or shared another call's result")
+                .tag("operation", op)
+                .tag("outcome", shared ? "coalesced" : "executed")
+                .register(meterRegistry));
+    }
+}
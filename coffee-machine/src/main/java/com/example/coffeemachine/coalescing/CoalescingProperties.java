@@ -0,0 +1,19 @@
+package com.example.coffeemachine.coalescing;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "vending.coalescing")
+public class CoalescingProperties {
+    private boolean enabled = true;
+    /** Per-operation switch, e.g. {@code catalog: false}. Operations that are not listed are coalesced. */
+    private Map<String, Boolean> operations = new HashMap<>();
+
+    public boolean isEnabled(String operation) {
+        return enabled && operations.getOrDefault(operation, true);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.coffeemachine.coalescing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one call per key at a time. Callers that arrive while a call for their key is in flight
+ * wait for it and receive the same result or exception. A call that starts after the flight has landed
+ * runs again, so nobody gets a result that was computed before they asked.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Result<V> execute(K key, Supplier<V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return new Result<>(await(existing), true);
+        }
+        try {
+            V value = call.get();
+            inFlight.remove(key, flight);
+            flight.complete(value);
+            return new Result<>(value, false);
+        } catch (RuntimeException | Error ex) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (ex.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw ex;
+        }
+    }
+
+    public record Result<V>(V value, boolean coalesced) {
+    }
+}
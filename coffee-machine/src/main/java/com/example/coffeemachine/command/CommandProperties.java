@@ -0,0 +1,23 @@
+package com.example.coffeemachine.command;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "vending.commands")
+public class CommandProperties {
+    private boolean enabled = false;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    /** Most commands of one machine committed in one transaction. */
+    private int maxBatchSize = 32;
+    /** Commands a machine may have waiting before new ones are rejected with 503. */
+    private int queueCapacity = 1000;
+    /** How long a synchronous request waits for its command before it gets 202 and the ticket instead. */
+    private Duration waitTimeout = Duration.ofSeconds(5);
+    private Duration ticketRetention = Duration.ofMinutes(5);
+    /** How long handing a machine to another node waits for the commands already queued for it. */
+    private Duration drainTimeout = Duration.ofSeconds(5);
+    private int retryAfterSeconds = 1;
+}
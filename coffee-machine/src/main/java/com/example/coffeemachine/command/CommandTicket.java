@@ -0,0 +1,64 @@
+package com.example.coffeemachine.command;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Receipt for a queued {@link MachineCommand}. The future completes once the command's batch is committed.
+ */
+public class CommandTicket {
+    private final String id = UUID.randomUUID().toString();
+    private final String machineId;
+    private final MachineCommand command;
+    private final Instant createdAt = Instant.now();
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+    private volatile Instant completedAt;
+
+    public CommandTicket(String machineId, MachineCommand command) {
+        this.machineId = machineId;
+        this.command = command;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getMachineId() {
+        return machineId;
+    }
+
+    public MachineCommand getCommand() {
+        return command;
+    }
+
+    public CompletableFuture<Object> getResult() {
+        return result;
+    }
+
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+    void complete(Object value) {
+        completedAt = Instant.now();
+        result.complete(value);
+    }
+
+    void fail(Throwable failure) {
+        completedAt = Instant.now();
+        result.completeExceptionally(failure);
+    }
+
+    public View view() {
+        TicketStatus status = !result.isDone() ? TicketStatus.PENDING
+                : result.isCompletedExceptionally() ? TicketStatus.FAILED : TicketStatus.COMPLETED;
+        Object value = status == TicketStatus.COMPLETED ? result.getNow(null) : null;
+        String error = status == TicketStatus.FAILED ? result.exceptionNow().getMessage() : null;
+        return new View(id, machineId, command.toString(), status, value, error, createdAt, completedAt);
+    }
+
+    public record View(String id, String machineId, String command, TicketStatus status, Object result, String error,
+                       Instant createdAt, Instant completedAt) {
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.coffeemachine.command;
+
+import com.example.coffeemachine.enums.CoinEnum;
+
+/**
+ * A state-changing request for one machine, executed by that machine's command loop.
+ */
+public sealed interface MachineCommand {
+
+    record InsertCoin(CoinEnum coin) implements MachineCommand {
+    }
+
+    record BuyProduct(Long productId) implements MachineCommand {
+    }
+
+    record ReturnCoins() implements MachineCommand {
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.coffeemachine.command;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.InsufficientAmountException;
+import com.example.coffeemachine.exception.NotEnoughChangeException;
+import com.example.coffeemachine.exception.ProductNotFoundException;
+import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.limiter.ConcurrencyLimited;
+import com.example.coffeemachine.limiter.LimitPriority;
+import com.example.coffeemachine.profiling.PurchaseEvent;
+import com.example.coffeemachine.profiling.VendingProfiler;
+import com.example.coffeemachine.repository.ProductRepository;
+import com.example.coffeemachine.state.CompactInventory;
+import com.example.coffeemachine.state.MachineState;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes one batch of a machine's commands in one transaction. A purchase settles under the machine's lock,
+ * then takes its unit out of stock without holding it, as {@code VendingService.buyProduct} does, so the two
+ * can never wait for each other's locks. If the transaction rolls back, every purchase of the batch gives its
+ * coins back and fails; coin inserts and returns are not written to the database and stand. A command refused
+ * for business reasons, e.g. too little money, fails on its own and is not written, so it never rolls back the
+ * rest of the batch. A batch counts as one purchase for the concurrency limiter.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "vending.commands", name = "enabled", havingValue = "true")
+public class MachineCommandProcessor {
+    private final MachineState machineState;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @ConcurrencyLimited(LimitPriority.PURCHASE)
+    public void process(String machineId, List<CommandTicket> batch) {
+        List<Outcome> outcomes = batch.stream().map(Outcome::new).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Outcome outcome : outcomes) {
+                    try {
+                        apply(machineId, outcome.ticket.getCommand(), outcome);
+                    } catch (InsufficientAmountException | NotEnoughChangeException | ProductOutOfStockException
+                             | ProductNotFoundException ex) {
+                        outcome.failure = ex;
+                    }
+                    outcome.ran = true;
+                }
+            });
+        } catch (RuntimeException ex) {
+            for (Outcome outcome : outcomes) {
+                if (!outcome.ran || outcome.ticket.getCommand() instanceof MachineCommand.BuyProduct) {
+                    outcome.failure = ex;
+                    outcome.sold = null;
+                }
+            }
+        }
+        CompactInventory inventory = machineState.inventory(machineId);
+        for (Outcome outcome : outcomes) {
+            if (outcome.sold != null && outcome.failure == null) {
+                inventory.putIfNewer(outcome.sold);
+            }
+            if (outcome.failure != null) {
+                outcome.ticket.fail(outcome.failure);
+            } else {
+                outcome.ticket.complete(outcome.value);
+            }
+        }
+    }
+
+    private void apply(String machineId, MachineCommand command, Outcome outcome) {
+        switch (command) {
+            case MachineCommand.InsertCoin insert -> machineState.update(machineId, state -> {
+                List<CoinEnum> insertedCoins = new ArrayList<>(state.insertedCoins());
+                insertedCoins.add(insert.coin());
+                return state.withInsertedCoins(insertedCoins);
+            });
+            case MachineCommand.ReturnCoins ignored -> machineState.update(machineId, state -> {
+                outcome.value = state.insertedCoins();
+                return state.withInsertedCoins(List.of());
+            });
+            case MachineCommand.BuyProduct buy -> buy(machineId, buy.productId(), outcome);
+        }
+    }
+
+    private void buy(String machineId, Long productId, Outcome outcome) {
+        PurchaseEvent purchase = VendingProfiler.beginPurchase(productId);
+        List<CoinEnum> paidCoins = new ArrayList<>();
+        Map<CoinEnum, Integer> changeCoins = new HashMap<>();
+        try {
+            Product product = productRepository.findById(productId)
+                    .orElseThrow(() -> new ProductNotFoundException("Product with ID " + productId + " not found"));
+            MachineState.PendingUpdate settled = machineState.updatePending(machineId, state -> {
+                paidCoins.clear();
+                paidCoins.addAll(state.insertedCoins());
+                return state.settle(product.getProductPrice(), changeCoins);
+            }, state -> state.cancelSale(paidCoins, changeCoins));
+            if (productRepository.decrementQuantity(productId) == 0) {
+                settled.revert();
+                throw new ProductOutOfStockException(product.getProductName());
+            }
+            outcome.value = changeCoins;
+            outcome.sold = productRepository.findById(productId).orElseThrow();
+            VendingProfiler.endPurchase(purchase, paidCoins.size(), totalOf(paidCoins), changeCoins, null);
+        } catch (RuntimeException ex) {
+            VendingProfiler.endPurchase(purchase, paidCoins.size(), totalOf(paidCoins), changeCoins, ex);
+            throw ex;
+        }
+    }
+
+    private static int totalOf(List<CoinEnum> coins) {
+        return coins.stream()
+                .mapToInt(CoinEnum::getDenomination)
+                .sum();
+    }
+
+    private static final class Outcome {
+        private final CommandTicket ticket;
+        private Object value;
+        private Product sold;
+        private RuntimeException failure;
+        private boolean ran;
+
+        private Outcome(CommandTicket ticket) {
+            this.ticket = ticket;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.coffeemachine.command;
+
+import com.example.coffeemachine.exception.MachineHandoffException;
+import com.example.coffeemachine.exception.ServiceOverloadedException;
+import com.example.coffeemachine.exception.TicketNotFoundException;
+import com.example.coffeemachine.offline.OfflineModeProperties;
+import com.example.coffeemachine.state.MachineContext;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gives every machine a mailbox that is drained by at most one worker at a time, so each machine has a
+ * single writer while different machines run in parallel. A worker takes every command that queued up
+ * while the previous batch was committing, up to {@code max-batch-size}, and commits them together.
+ * Queued purchases do not go through {@code VendingService.buyProduct}, so they cannot fall back to offline
+ * sales; the two modes cannot be enabled together.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.commands", name = "enabled", havingValue = "true")
+public class MachineCommandQueue {
+    private final CommandProperties properties;
+    private final MachineCommandProcessor processor;
+    private final TaskScheduler taskScheduler;
+    private final DistributionSummary batchSizes;
+    private final ExecutorService workers;
+    private final ConcurrentMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CommandTicket> tickets = new ConcurrentHashMap<>();
+
+    public MachineCommandQueue(CommandProperties properties, MachineCommandProcessor processor, TaskScheduler taskScheduler,
+                               OfflineModeProperties offlineProperties, MeterRegistry meterRegistry) {
+        if (offlineProperties.isEnabled()) {
+            throw new IllegalStateException("vending.commands.enabled and vending.offline.enabled cannot be combined, "
+                    + "queued purchases would not be sold offline");
+        }
+        this.properties = properties;
+        this.processor = processor;
+        this.taskScheduler = taskScheduler;
+        this.batchSizes = DistributionSummary.builder("vending.commands.batch.size")
+                .description("Commands committed together by a machine's command loop")
+                .register(meterRegistry);
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(properties.getWorkerThreads(), r -> {
+            Thread thread = new Thread(r, "machine-commands-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskScheduler.scheduleWithFixedDelay(this::expireTickets,
+                Instant.now().plus(properties.getTicketRetention()), properties.getTicketRetention());
+    }
+
+    /**
+     * Queues a command for the machine of the current {@link MachineContext}.
+     */
+    public CommandTicket submit(MachineCommand command) {
+        String machineId = MachineContext.currentMachineId();
+        Mailbox mailbox = mailboxes.computeIfAbsent(machineId, Mailbox::new);
+        if (mailbox.size.incrementAndGet() > properties.getQueueCapacity()) {
+            mailbox.size.decrementAndGet();
+            throw new ServiceOverloadedException(properties.getRetryAfterSeconds());
+        }
+        if (mailbox.closed) {
+            mailbox.size.decrementAndGet();
+            throw new MachineHandoffException(machineId);
+        }
+        CommandTicket ticket = new CommandTicket(machineId, command);
+        tickets.put(ticket.getId(), ticket);
+        mailbox.commands.add(ticket);
+        schedule(mailbox);
+        return ticket;
+    }
+
+    public CommandTicket getTicket(String ticketId) {
+        CommandTicket ticket = tickets.get(ticketId);
+        if (ticket == null) {
+            throw new TicketNotFoundException(ticketId);
+        }
+        return ticket;
+    }
+
+    /**
+     * Refuses new commands for the machine until {@link #open} and waits until the ones already queued have run,
+     * so a handoff saves their effect. Gives up after {@code drain-timeout}; commands that run later find the
+     * machine fenced and fail.
+     */
+    public void close(String machineId) {
+        Mailbox mailbox = mailboxes.computeIfAbsent(machineId, Mailbox::new);
+        mailbox.closed = true;
+        long deadline = System.nanoTime() + properties.getDrainTimeout().toNanos();
+        // submit counts a command before it checks closed, so a zero count means none can still slip in.
+        while (mailbox.size.get() > 0 || mailbox.scheduled.get()) {
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("Commands of machine {} still queued after {}", machineId, properties.getDrainTimeout());
+                return;
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /**
+     * Accepts commands for the machine again after this node claimed it back.
+     */
+    public void open(String machineId) {
+        Mailbox mailbox = mailboxes.get(machineId);
+        if (mailbox != null) {
+            mailbox.closed = false;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdown();
+    }
+
+    private void schedule(Mailbox mailbox) {
+        if (mailbox.scheduled.compareAndSet(false, true)) {
+            workers.execute(() -> drain(mailbox));
+        }
+    }
+
+    private void drain(Mailbox mailbox) {
+        try {
+            List<CommandTicket> batch = new ArrayList<>();
+            CommandTicket ticket;
+            while (batch.size() < properties.getMaxBatchSize() && (ticket = mailbox.commands.poll()) != null) {
+                batch.add(ticket);
+            }
+            mailbox.size.addAndGet(-batch.size());
+            if (!batch.isEmpty()) {
+                batchSizes.record(batch.size());
+                try {
+                    processor.process(mailbox.machineId, batch);
+                } catch (RuntimeException ex) {
+                    // Rejected before it ran, e.g. by the concurrency limiter
+                    batch.forEach(queued -> queued.fail(ex));
+                    throw ex;
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.error("Command loop of machine {} failed", mailbox.machineId, ex);
+        } finally {
+            mailbox.scheduled.set(false);
+            // A command queued after the last poll saw the loop as scheduled and left it to us.
+            if (!mailbox.commands.isEmpty()) {
+                schedule(mailbox);
+            }
+        }
+    }
+
+    private void expireTickets() {
+        Instant cutoff = Instant.now().minus(properties.getTicketRetention());
+        tickets.values().removeIf(ticket -> ticket.getCompletedAt() != null && ticket.getCompletedAt().isBefore(cutoff));
+    }
+
+    private static final class Mailbox {
+        private final String machineId;
+        private final Queue<CommandTicket> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Mailbox(String machineId) {
+            this.machineId = machineId;
+        }
+    }
+}
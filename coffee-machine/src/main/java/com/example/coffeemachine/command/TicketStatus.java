@@ -0,0 +1,7 @@
+package com.example.coffeemachine.command;
+
+public enum TicketStatus {
+    PENDING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,6 @@
+package com.example.coffeemachine.datasource;
+
+public enum DataSourceTarget {
+    PRIMARY,
+    REPLICA
+}
@@ -0,0 +1,36 @@
+package com.example.coffeemachine.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Lets a caller pin read-only work to the primary, e.g. a read that has to observe a purchase
+ * committed a moment ago and cannot tolerate replication lag.
+ */
+public final class ReadConsistency {
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> false);
+
+    private ReadConsistency() {
+    }
+
+    public static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get();
+    }
+
+    public static void requirePrimary() {
+        PRIMARY_REQUIRED.set(true);
+    }
+
+    public static void clear() {
+        PRIMARY_REQUIRED.remove();
+    }
+
+    public static <T> T onPrimary(Supplier<T> read) {
+        boolean previous = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(true);
+        try {
+            return read.get();
+        } finally {
+            PRIMARY_REQUIRED.set(previous);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.coffeemachine.datasource;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Honours {@code X-Read-Consistency: primary}, which clients send on the reads that follow their own purchase.
+ */
+public class ReadConsistencyInterceptor implements HandlerInterceptor {
+    public static final String HEADER = "X-Read-Consistency";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if ("primary".equalsIgnoreCase(request.getHeader(HEADER))) {
+            ReadConsistency.requirePrimary();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadConsistency.clear();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.coffeemachine.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the replica and everything else to the primary. It has to sit
+ * behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, otherwise the
+ * connection is fetched before the transaction is marked read-only.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    private final Map<DataSourceTarget, Counter> routed = new EnumMap<>(DataSourceTarget.class);
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, MeterRegistry meterRegistry) {
+        setTargetDataSources(Map.of(DataSourceTarget.PRIMARY, primary, DataSourceTarget.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        for (DataSourceTarget target : DataSourceTarget.values()) {
+            routed.put(target, Counter.builder("vending.datasource.routed")
+                    .description("Connections handed out per routing target")
+                    .tag("target", target.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        DataSourceTarget target = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !ReadConsistency.isPrimaryRequired()
+                ? DataSourceTarget.REPLICA
+                : DataSourceTarget.PRIMARY;
+        routed.get(target).increment();
+        return target;
+    }
+}
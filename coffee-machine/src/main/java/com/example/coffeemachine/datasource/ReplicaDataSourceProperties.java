@@ -0,0 +1,13 @@
+package com.example.coffeemachine.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "vending.datasource.replica")
+public class ReplicaDataSourceProperties {
+    private String url;
+    private String username;
+    private String password;
+    private String driverClassName;
+}
@@ -0,0 +1,21 @@
+package com.example.coffeemachine.dto;
+
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.validation.annotation.MaxQuantity;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class ServiceVisitRequest {
+    @NotNull(message = "Product quantities are required")
+    private Map<Long, @NotNull @Min(value = 0, message = "Quantity must be greater than or equal to 0") @MaxQuantity Integer> quantities = new HashMap<>();
+
+    @NotNull(message = "Coin levels are required")
+    private Map<CoinEnum, @NotNull @Min(value = 0, message = "Coin count must be greater than or equal to 0") Integer> coins = new HashMap<>();
+}
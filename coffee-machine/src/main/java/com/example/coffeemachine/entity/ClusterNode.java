@@ -0,0 +1,27 @@
+package com.example.coffeemachine.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "cluster_nodes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterNode {
+    @Id
+    private String nodeId;
+
+    @Column(nullable = false)
+    private String url;
+
+    @Column(nullable = false)
+    private Instant lastHeartbeat;
+}
@@ -1,6 +1,7 @@
 package com.example.coffeemachine.entity;
 
 import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.state.MachineContext;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
@@ -9,13 +10,20 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.SourceType;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 
 @Entity
-@Table(name = "coins")
+@Table(name = "coins", uniqueConstraints = @UniqueConstraint(columnNames = {"machine_id", "coin"}))
 @Data
 @NoArgsConstructor
 public class Coin {
@@ -23,6 +31,13 @@ public class Coin {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /**
+     * Machine whose float this row records. Rows written before machines had their own float belong to the default one.
+     */
+    @ColumnDefault("'" + MachineContext.DEFAULT_MACHINE_ID + "'")
+    @Column(name = "machine_id", nullable = false)
+    private String machineId = MachineContext.DEFAULT_MACHINE_ID;
+
     @NotNull(message = "Coin type is required")
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -32,8 +47,23 @@ public class Coin {
     @Column(nullable = false)
     private Integer quantity;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
+    @UpdateTimestamp(source = SourceType.DB)
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
     public Coin(CoinEnum coin, Integer quantity) {
         this.coin = coin;
         this.quantity = quantity;
     }
+
+    public Coin(String machineId, CoinEnum coin, Integer quantity) {
+        this(coin, quantity);
+        this.machineId = machineId;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.example.coffeemachine.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Session and coin state of one machine, written by the owning node so another node can take over.
+ */
+@Entity
+@Table(name = "machine_sessions")
+@Data
+@NoArgsConstructor
+public class MachineSession {
+    @Id
+    private String machineId;
+
+    @Column(nullable = false, length = 2000)
+    private String insertedCoins = "";
+
+    @Column(nullable = false)
+    private String availableChange = "";
+
+    private String ownerNodeId;
+
+    @Column(nullable = false)
+    private long stateVersion;
+
+    private Instant updatedAt;
+
+    public MachineSession(String machineId) {
+        this.machineId = machineId;
+    }
+}
@@ -5,14 +5,21 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.SourceType;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = @Index(name = "idx_products_updated_at", columnList = "updated_at"))
 @Data
 @NoArgsConstructor
 
@@ -30,4 +37,21 @@ public class Product {
     @MaxQuantity
     @Column(nullable = false)
     private int quantity;
+
+    /**
+     * Bumped by every write, including the bulk stock updates, so a reader can tell a row it has already seen.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
+    /**
+     * Database time of the last write, the watermark of the incremental state sync.
+     * Writes that bypass the application must set it too.
+     */
+    @UpdateTimestamp(source = SourceType.DB)
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
 }
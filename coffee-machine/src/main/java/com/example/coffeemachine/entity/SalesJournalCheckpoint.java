@@ -0,0 +1,32 @@
+package com.example.coffeemachine.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Last offline sale of a node's journal that has been applied to {@code products}. It is written in the same
+ * transaction as the stock changes, so a batch is never applied twice.
+ */
+@Entity
+@Table(name = "sales_journal_checkpoints")
+@Data
+@NoArgsConstructor
+public class SalesJournalCheckpoint {
+    @Id
+    private String journalId;
+
+    @Column(nullable = false)
+    private long lastSequence;
+
+    private Instant updatedAt;
+
+    public SalesJournalCheckpoint(String journalId) {
+        this.journalId = journalId;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.coffeemachine.exception;
+
+public class MachineHandoffException extends RuntimeException{
+    public MachineHandoffException(String machineId) {
+        super(String.format("Machine %s is being handed over to another node",machineId));
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.coffeemachine.exception;
+
+import lombok.Getter;
+
+@Getter
+public class ServiceOverloadedException extends RuntimeException{
+    private final int retryAfterSeconds;
+
+    public ServiceOverloadedException(int retryAfterSeconds) {
+        super(String.format("Service is overloaded. Retry in %d seconds",retryAfterSeconds));
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
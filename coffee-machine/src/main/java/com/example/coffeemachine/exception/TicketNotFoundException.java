@@ -0,0 +1,7 @@
+package com.example.coffeemachine.exception;
+
+public class TicketNotFoundException extends RuntimeException{
+    public TicketNotFoundException(String ticketId) {
+        super(String.format("Command ticket %s not found or expired",ticketId));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.coffeemachine.limiter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gradient based concurrency limit. The limit follows the ratio between the long-term and the
+ * current round trip time: while latency stays near its baseline the limit grows by roughly
+ * {@code sqrt(limit)}, and once requests start queueing (current latency above
+ * {@code rtt-tolerance} times the baseline) it shrinks proportionally.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final double SHORT_WINDOW = 10;
+
+    private final LimiterProperties properties;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile double limit;
+    private double longRtt;
+    private double shortRtt;
+
+    public AdaptiveConcurrencyLimiter(LimiterProperties properties) {
+        this.properties = properties;
+        this.limit = properties.getInitialLimit();
+    }
+
+    public boolean tryAcquire(LimitPriority priority) {
+        double allowed = priority == LimitPriority.CATALOG
+                ? Math.max(1, limit * properties.getCatalogShare())
+                : limit;
+        while (true) {
+            int current = inflight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long rttNanos) {
+        int inflightAtCompletion = inflight.getAndDecrement();
+        onSample(rttNanos, inflightAtCompletion);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    private synchronized void onSample(long rttNanos, int inflightAtCompletion) {
+        if (longRtt == 0) {
+            longRtt = rttNanos;
+            shortRtt = rttNanos;
+        } else {
+            longRtt += (rttNanos - longRtt) / properties.getLongWindow();
+            shortRtt += (rttNanos - shortRtt) / SHORT_WINDOW;
+        }
+        if (longRtt > 2 * shortRtt) {
+            // Latency dropped a lot, e.g. after a slow period: let the baseline catch up faster.
+            longRtt *= 0.95;
+        }
+        if (inflightAtCompletion < limit / 2) {
+            // Not enough load to tell whether the limit is too low.
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, properties.getRttTolerance() * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - properties.getSmoothing()) + newLimit * properties.getSmoothing();
+        limit = Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), newLimit));
+    }
+}
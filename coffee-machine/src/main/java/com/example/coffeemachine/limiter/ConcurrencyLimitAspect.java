@@ -0,0 +1,61 @@
+package com.example.coffeemachine.limiter;
+
+import com.example.coffeemachine.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Applies the {@link AdaptiveConcurrencyLimiter} to {@link ConcurrencyLimited} service methods. It runs
+ * before the transaction interceptor, so rejected calls never wait for a pooled connection.
+ */
+@Aspect
+@Component
+@Order(0)
+@ConditionalOnProperty(prefix = "vending.limiter", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitAspect {
+    private final LimiterProperties properties;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Map<LimitPriority, Counter> rejected = new EnumMap<>(LimitPriority.class);
+
+    public ConcurrencyLimitAspect(LimiterProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.limiter = new AdaptiveConcurrencyLimiter(properties);
+        Gauge.builder("vending.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("vending.limiter.inflight", limiter, AdaptiveConcurrencyLimiter::getInflight)
+                .description("Service calls currently admitted by the limiter")
+                .register(meterRegistry);
+        for (LimitPriority priority : LimitPriority.values()) {
+            rejected.put(priority, Counter.builder("vending.limiter.rejected")
+                    .description("Service calls shed by the concurrency limiter")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    @Around("@annotation(concurrencyLimited)")
+    public Object limit(ProceedingJoinPoint joinPoint, ConcurrencyLimited concurrencyLimited) throws Throwable {
+        LimitPriority priority = concurrencyLimited.value();
+        if (!limiter.tryAcquire(priority)) {
+            rejected.get(priority).increment();
+            throw new ServiceOverloadedException(properties.getRetryAfterSeconds());
+        }
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            limiter.release(System.nanoTime() - start);
+        }
+    }
+}
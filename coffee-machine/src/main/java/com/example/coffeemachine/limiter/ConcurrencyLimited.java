@@ -0,0 +1,12 @@
+package com.example.coffeemachine.limiter;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConcurrencyLimited {
+    LimitPriority value() default LimitPriority.PURCHASE;
+}
@@ -0,0 +1,8 @@
+package com.example.coffeemachine.limiter;
+
+public enum LimitPriority {
+    /** Purchases and product writes, admitted up to the full limit. */
+    PURCHASE,
+    /** Catalog reads, admitted only up to {@code catalog-share} of the limit so they are shed first. */
+    CATALOG
+}
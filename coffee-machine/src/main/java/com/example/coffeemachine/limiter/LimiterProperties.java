@@ -0,0 +1,18 @@
+package com.example.coffeemachine.limiter;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "vending.limiter")
+public class LimiterProperties {
+    private boolean enabled = true;
+    private int initialLimit = 10;
+    private int minLimit = 2;
+    private int maxLimit = 200;
+    private double catalogShare = 0.6;
+    private double rttTolerance = 1.5;
+    private double smoothing = 0.2;
+    private int longWindow = 600;
+    private int retryAfterSeconds = 1;
+}
@@ -0,0 +1,4 @@
+package com.example.coffeemachine.offline;
+
+public record DatabaseAvailabilityChangedEvent(boolean available) {
+}
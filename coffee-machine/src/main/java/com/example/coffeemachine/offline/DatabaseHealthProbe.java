@@ -0,0 +1,120 @@
+package com.example.coffeemachine.offline;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides whether purchases may use the database. The probe borrows a connection on its own thread and
+ * gives up after {@code probe-timeout}, so a stalled database is detected long before the pool's
+ * connection timeout. A probe that is still hanging counts as a failure on every following check.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.offline", name = "enabled", havingValue = "true")
+public class DatabaseHealthProbe {
+    private final DataSource dataSource;
+    private final OfflineModeProperties properties;
+    private final TaskScheduler taskScheduler;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService probeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "db-health-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean available = new AtomicBoolean(true);
+
+    private Future<Boolean> probe;
+    private int consecutiveFailures;
+
+    public DatabaseHealthProbe(DataSource dataSource, OfflineModeProperties properties, TaskScheduler taskScheduler,
+                               ApplicationEventPublisher eventPublisher) {
+        this.dataSource = dataSource;
+        this.properties = properties;
+        this.taskScheduler = taskScheduler;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskScheduler.scheduleWithFixedDelay(this::check,
+                Instant.now().plus(properties.getHealthCheckInterval()), properties.getHealthCheckInterval());
+    }
+
+    public boolean isAvailable() {
+        return available.get();
+    }
+
+    public synchronized void check() {
+        if (probe == null || probe.isDone()) {
+            probe = probeExecutor.submit(this::validateConnection);
+        }
+        try {
+            if (probe.get(properties.getProbeTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                consecutiveFailures = 0;
+                setAvailable(true, null);
+            } else {
+                failed(new SQLException("Connection is not valid"));
+            }
+        } catch (TimeoutException ex) {
+            failed(new SQLException("No connection within " + properties.getProbeTimeout()));
+        } catch (ExecutionException ex) {
+            failed(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Switches to offline mode at once, for callers that have just seen the database fail.
+     */
+    public void markUnavailable(Throwable cause) {
+        setAvailable(false, cause);
+    }
+
+    @PreDestroy
+    public void stop() {
+        probeExecutor.shutdownNow();
+    }
+
+    private boolean validateConnection() throws SQLException {
+        int timeoutSeconds = (int) Math.max(1, properties.getProbeTimeout().toSeconds());
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.isValid(timeoutSeconds);
+        }
+    }
+
+    private void failed(Throwable cause) {
+        if (++consecutiveFailures >= properties.getFailureThreshold()) {
+            setAvailable(false, cause);
+        }
+    }
+
+    private void setAvailable(boolean value, Throwable cause) {
+        if (available.compareAndSet(!value, value)) {
+            if (value) {
+                log.info("Database is available again, leaving offline mode");
+            } else {
+                log.warn("Database is unavailable, purchases continue in offline mode: {}", cause == null ? "" : cause.toString());
+            }
+            eventPublisher.publishEvent(new DatabaseAvailabilityChangedEvent(value));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.coffeemachine.offline;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "vending.offline")
+public class OfflineModeProperties {
+    private boolean enabled = false;
+    /** Append-only file holding the sales made while the database was unavailable. */
+    private String journalPath = System.getProperty("java.io.tmpdir") + "/vending-sales.journal";
+    /** Identifies this node's journal in sales_journal_checkpoints, must be unique per node. */
+    private String journalId = "local";
+    private Duration healthCheckInterval = Duration.ofSeconds(1);
+    private Duration probeTimeout = Duration.ofMillis(500);
+    private int failureThreshold = 2;
+    /** Units of every product that offline sales never touch, to cover sales made by other nodes. */
+    private int safetyStock = 1;
+    private int reconcileBatchSize = 500;
+    private Duration catalogRefreshInterval = Duration.ofSeconds(30);
+}
@@ -0,0 +1,40 @@
+package com.example.coffeemachine.offline;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+/**
+ * Sends purchases to {@link OfflineSalesService} while the database is unavailable. It runs before the
+ * concurrency limiter and the transaction interceptor, so an offline sale never waits for a connection.
+ * A purchase that fails to get a connection has not changed anything yet, so it is retried offline.
+ */
+@Aspect
+@Component
+@Order(-1)
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "vending.offline", name = "enabled", havingValue = "true")
+public class OfflineSalesAspect {
+    private final DatabaseHealthProbe healthProbe;
+    private final OfflineSalesService offlineSales;
+
+    @Around("execution(* com.example.coffeemachine.service.VendingService.buyProduct(..)) && args(productId)")
+    public Object buyProduct(ProceedingJoinPoint joinPoint, Long productId) throws Throwable {
+        if (!healthProbe.isAvailable()) {
+            return offlineSales.sell(productId);
+        }
+        try {
+            Object change = joinPoint.proceed();
+            offlineSales.recordOnlineSale(productId);
+            return change;
+        } catch (CannotCreateTransactionException ex) {
+            healthProbe.markUnavailable(ex);
+            return offlineSales.sell(productId);
+        }
+    }
+}
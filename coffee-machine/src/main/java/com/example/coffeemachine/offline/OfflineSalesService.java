@@ -0,0 +1,109 @@
+package com.example.coffeemachine.offline;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.ProductNotFoundException;
+import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.state.MachineSnapshot;
+import com.example.coffeemachine.state.MachineState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Sells from the last known stock while the database is unavailable. Every sale reserves a unit against
+ * that stock, minus {@code safety-stock} units per product, and is journaled before the change is paid out.
+ * The machine's in-memory stock drops with the sale, as it does for a purchase through the database.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "vending.offline", name = "enabled", havingValue = "true")
+public class OfflineSalesService {
+    private final OfflineModeProperties properties;
+    private final SalesJournal journal;
+    private final MachineState machineState;
+    private final Counter sales;
+    private final ConcurrentMap<Long, OfflineStock> catalog = new ConcurrentHashMap<>();
+
+    public OfflineSalesService(OfflineModeProperties properties, SalesJournal journal, MachineState machineState,
+                               MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.journal = journal;
+        this.machineState = machineState;
+        this.sales = Counter.builder("vending.offline.sales")
+                .description("Purchases served from memory while the database was unavailable")
+                .register(meterRegistry);
+    }
+
+    public Map<CoinEnum, Integer> sell(Long productId) {
+        OfflineStock stock = reserve(productId);
+        Map<CoinEnum, Integer> changeCoins = new HashMap<>();
+        try {
+            machineState.update(s -> {
+                MachineSnapshot next = s.settle(stock.price(), changeCoins);
+                journal.append(productId, stock.price());
+                return next;
+            });
+        } catch (RuntimeException ex) {
+            catalog.computeIfPresent(productId, (id, current) -> current.withPending(current.pending() - 1));
+            throw ex;
+        }
+        machineState.inventory().decrement(productId);
+        sales.increment();
+        log.info("Product {} sold offline, change {}", stock.productName(), changeCoins);
+        return changeCoins;
+    }
+
+    /**
+     * Keeps the known stock in step with purchases that went through the database.
+     */
+    public void recordOnlineSale(Long productId) {
+        catalog.computeIfPresent(productId, (id, stock) -> stock.withQuantity(stock.quantity() - 1));
+    }
+
+    /**
+     * Moves journaled sales, now applied to the database, out of the pending reservations.
+     */
+    public void recordReconciled(Map<Long, Integer> sold) {
+        sold.forEach((productId, units) -> catalog.computeIfPresent(productId,
+                (id, stock) -> stock.withQuantity(stock.quantity() - units).withPending(stock.pending() - units)));
+    }
+
+    /**
+     * Replaces the known stock with the database's. Reservations of sales that are still pending are kept.
+     */
+    public void refresh(List<Product> products) {
+        Set<Long> ids = products.stream().map(Product::getId).collect(Collectors.toSet());
+        for (Product product : products) {
+            OfflineStock fresh = new OfflineStock(product.getProductName(), product.getProductPrice(), product.getQuantity(), 0);
+            catalog.merge(product.getId(), fresh, (current, latest) -> latest.withPending(current.pending()));
+        }
+        catalog.entrySet().removeIf(e -> !ids.contains(e.getKey()) && e.getValue().pending() == 0);
+    }
+
+    public int getPendingSales() {
+        return journal.size();
+    }
+
+    private OfflineStock reserve(Long productId) {
+        return catalog.compute(productId, (id, stock) -> {
+            if (stock == null) {
+                throw new ProductNotFoundException("Product with ID " + productId + " not found");
+            }
+            if (stock.available(properties.getSafetyStock()) <= 0) {
+                throw new ProductOutOfStockException(stock.productName());
+            }
+            return stock.withPending(stock.pending() + 1);
+        });
+    }
+}
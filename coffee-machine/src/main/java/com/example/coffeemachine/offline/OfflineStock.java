@@ -0,0 +1,19 @@
+package com.example.coffeemachine.offline;
+
+/**
+ * Last known stock of a product, with the offline sales that are not yet in the database.
+ */
+record OfflineStock(String productName, int price, int quantity, int pending) {
+
+    int available(int safetyStock) {
+        return quantity - pending - safetyStock;
+    }
+
+    OfflineStock withQuantity(int quantity) {
+        return new OfflineStock(productName, price, Math.max(0, quantity), pending);
+    }
+
+    OfflineStock withPending(int pending) {
+        return new OfflineStock(productName, price, quantity, Math.max(0, pending));
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.coffeemachine.offline;
+
+import java.time.Instant;
+
+/**
+ * Offline sales of a product that the database could not cover, because the units were sold elsewhere
+ * or the product was removed in the meantime.
+ */
+public record ReconciliationConflict(long productId, int soldOffline, int missing, Instant detectedAt) {
+}
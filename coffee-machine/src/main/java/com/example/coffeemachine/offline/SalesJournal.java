@@ -0,0 +1,169 @@
+package com.example.coffeemachine.offline;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable, append-only log of offline sales. The file starts with the sequence of its first record,
+ * followed by fixed-size records:
+ * <pre>
+ * long sequence | long soldAt (epoch millis) | long productId | int price | int crc32c
+ * </pre>
+ * Every append is forced to disk before the sale is handed out. A torn record at the end of the file,
+ * left by a crash during a write, is detected by its checksum and dropped on startup.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.offline", name = "enabled", havingValue = "true")
+public class SalesJournal {
+    static final int HEADER_SIZE = Long.BYTES;
+    static final int RECORD_SIZE = 32;
+    private static final int CHECKSUMMED_SIZE = RECORD_SIZE - Integer.BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private long firstSequence;
+    private int entries;
+
+    public SalesJournal(OfflineModeProperties properties) throws IOException {
+        Path path = Path.of(properties.getJournalPath()).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(1);
+        } else {
+            recover(path);
+        }
+    }
+
+    public synchronized long append(long productId, int price) {
+        long sequence = firstSequence + entries;
+        record.clear();
+        record.putLong(sequence).putLong(System.currentTimeMillis()).putLong(productId).putInt(price);
+        record.putInt(checksum(record.array()));
+        record.flip();
+        try {
+            long position = HEADER_SIZE + (long) entries * RECORD_SIZE;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not journal offline sale of product " + productId, ex);
+        }
+        entries++;
+        return sequence;
+    }
+
+    /**
+     * Returns up to {@code limit} entries with a sequence greater than {@code afterSequence}.
+     */
+    public synchronized List<SalesJournalEntry> read(long afterSequence, int limit) {
+        List<SalesJournalEntry> result = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        int index = (int) Math.max(0, afterSequence + 1 - firstSequence);
+        try {
+            for (; index < entries && result.size() < limit; index++) {
+                buffer.clear();
+                readFully(buffer, HEADER_SIZE + (long) index * RECORD_SIZE);
+                buffer.flip();
+                result.add(new SalesJournalEntry(buffer.getLong(), Instant.ofEpochMilli(buffer.getLong()),
+                        buffer.getLong(), buffer.getInt()));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read the offline sales journal", ex);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries;
+    }
+
+    /**
+     * Empties the file once every entry up to {@code appliedSequence} is in the database. The sequence keeps
+     * counting from where it was, so the database checkpoint stays valid.
+     */
+    public synchronized void compact(long appliedSequence) {
+        long nextSequence = firstSequence + entries;
+        if (entries == 0 || appliedSequence < nextSequence - 1) {
+            return;
+        }
+        try {
+            channel.truncate(HEADER_SIZE);
+            writeHeader(nextSequence);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not compact the offline sales journal", ex);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void recover(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        firstSequence = header.flip().getLong();
+
+        long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        while (entries < records) {
+            buffer.clear();
+            readFully(buffer, HEADER_SIZE + (long) entries * RECORD_SIZE);
+            if (buffer.getInt(CHECKSUMMED_SIZE) != checksum(buffer.array())
+                    || buffer.getLong(0) != firstSequence + entries) {
+                break;
+            }
+            entries++;
+        }
+        long validSize = HEADER_SIZE + (long) entries * RECORD_SIZE;
+        if (channel.size() > validSize) {
+            log.warn("Dropping {} bytes of torn records at the end of {}", channel.size() - validSize, path);
+            channel.truncate(validSize);
+            channel.force(true);
+        }
+        if (entries > 0) {
+            log.info("Offline sales journal {} holds {} sales to reconcile", path, entries);
+        }
+    }
+
+    private void writeHeader(long sequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(sequence).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, HEADER_SIZE - header.remaining());
+        }
+        channel.force(true);
+        firstSequence = sequence;
+        entries = 0;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the offline sales journal");
+            }
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, CHECKSUMMED_SIZE);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.coffeemachine.offline;
+
+import java.time.Instant;
+
+public record SalesJournalEntry(long sequence, Instant soldAt, long productId, int price) {
+}
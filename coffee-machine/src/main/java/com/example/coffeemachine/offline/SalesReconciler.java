@@ -0,0 +1,159 @@
+package com.example.coffeemachine.offline;
+
+import com.example.coffeemachine.entity.SalesJournalCheckpoint;
+import com.example.coffeemachine.repository.ProductRepository;
+import com.example.coffeemachine.repository.SalesJournalCheckpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Applies the offline sales journal to {@code products} once the database is back. Each batch takes its units
+ * out of stock and moves this node's checkpoint in one transaction. Sales the stock can no longer cover are
+ * reported as {@link ReconciliationConflict}s and leave the product at zero. The machines' in-memory stock was
+ * already decremented when each sale was journaled, so reconciling only changes the database.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.offline", name = "enabled", havingValue = "true")
+public class SalesReconciler {
+    private static final int REPORTED_CONFLICTS = 100;
+
+    private final OfflineModeProperties properties;
+    private final SalesJournal journal;
+    private final OfflineSalesService offlineSales;
+    private final DatabaseHealthProbe healthProbe;
+    private final ProductRepository productRepository;
+    private final SalesJournalCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final Counter conflictCounter;
+    private final Deque<ReconciliationConflict> conflicts = new ConcurrentLinkedDeque<>();
+
+    public SalesReconciler(OfflineModeProperties properties, SalesJournal journal, OfflineSalesService offlineSales,
+                           DatabaseHealthProbe healthProbe, ProductRepository productRepository,
+                           SalesJournalCheckpointRepository checkpointRepository, TransactionTemplate transactionTemplate,
+                           TaskScheduler taskScheduler, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.journal = journal;
+        this.offlineSales = offlineSales;
+        this.healthProbe = healthProbe;
+        this.productRepository = productRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.taskScheduler = taskScheduler;
+        this.conflictCounter = Counter.builder("vending.offline.conflicts")
+                .description("Offline sales the database stock could not cover")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskScheduler.schedule(this::reconcile, Instant.now());
+        taskScheduler.scheduleWithFixedDelay(this::refresh,
+                Instant.now().plus(properties.getCatalogRefreshInterval()), properties.getCatalogRefreshInterval());
+    }
+
+    @EventListener
+    public void onAvailabilityChanged(DatabaseAvailabilityChangedEvent event) {
+        if (event.available()) {
+            taskScheduler.schedule(this::reconcile, Instant.now());
+        }
+    }
+
+    /**
+     * Applies every journaled sale and refreshes the offline stock.
+     *
+     * @return the number of sales applied
+     */
+    public synchronized int reconcile() {
+        if (!healthProbe.isAvailable()) {
+            return 0;
+        }
+        int applied = 0;
+        try {
+            while (true) {
+                Batch batch = transactionTemplate.execute(status -> applyBatch());
+                if (batch == null) {
+                    break;
+                }
+                applied += batch.entries();
+                offlineSales.recordReconciled(batch.sold());
+                batch.shortfalls().forEach((productId, missing) -> report(new ReconciliationConflict(
+                        productId, batch.sold().get(productId), missing, Instant.now())));
+                journal.compact(batch.lastSequence());
+            }
+            offlineSales.refresh(productRepository.findAll());
+        } catch (DataAccessException | TransactionException ex) {
+            log.warn("Reconciliation of offline sales stopped, {} sales still pending: {}", journal.size(), ex.toString());
+        }
+        if (applied > 0) {
+            log.info("Reconciled {} offline sales, {} still pending", applied, journal.size());
+        }
+        return applied;
+    }
+
+    public List<ReconciliationConflict> getConflicts() {
+        return new ArrayList<>(conflicts);
+    }
+
+    private void refresh() {
+        if (journal.size() > 0) {
+            reconcile();
+        } else if (healthProbe.isAvailable()) {
+            try {
+                offlineSales.refresh(productRepository.findAll());
+            } catch (DataAccessException ex) {
+                log.debug("Offline stock refresh failed: {}", ex.toString());
+            }
+        }
+    }
+
+    private Batch applyBatch() {
+        SalesJournalCheckpoint checkpoint = checkpointRepository.findById(properties.getJournalId())
+                .orElseGet(() -> new SalesJournalCheckpoint(properties.getJournalId()));
+        List<SalesJournalEntry> entries = journal.read(checkpoint.getLastSequence(), properties.getReconcileBatchSize());
+        if (entries.isEmpty()) {
+            journal.compact(checkpoint.getLastSequence());
+            return null;
+        }
+        Map<Long, Integer> sold = new TreeMap<>();
+        entries.forEach(entry -> sold.merge(entry.productId(), 1, Integer::sum));
+        Map<Long, Integer> shortfalls = productRepository.takeQuantities(sold);
+
+        long lastSequence = entries.get(entries.size() - 1).sequence();
+        checkpoint.setLastSequence(lastSequence);
+        checkpoint.setUpdatedAt(Instant.now());
+        checkpointRepository.save(checkpoint);
+        return new Batch(entries.size(), sold, shortfalls, lastSequence);
+    }
+
+    private void report(ReconciliationConflict conflict) {
+        log.warn("Offline sales of product {} exceeded the stock: {} sold, {} missing",
+                conflict.productId(), conflict.soldOffline(), conflict.missing());
+        conflictCounter.increment();
+        conflicts.addFirst(conflict);
+        while (conflicts.size() > REPORTED_CONFLICTS) {
+            conflicts.pollLast();
+        }
+    }
+
+    private record Batch(int entries, Map<Long, Integer> sold, Map<Long, Integer> shortfalls, long lastSequence) {
+    }
+}
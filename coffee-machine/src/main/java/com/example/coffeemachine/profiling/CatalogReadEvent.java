@@ -0,0 +1,18 @@
+package com.example.coffeemachine.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.example.coffeemachine.CatalogRead")
+@Label("Catalog Read")
+@Category({"Coffee Machine", "Catalog"})
+@StackTrace(false)
+public class CatalogReadEvent extends jdk.jfr.Event {
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Product Count")
+    int productCount;
+}
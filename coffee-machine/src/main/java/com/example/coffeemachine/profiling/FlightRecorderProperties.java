@@ -0,0 +1,20 @@
+package com.example.coffeemachine.profiling;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "vending.jfr")
+public class FlightRecorderProperties {
+    /** Start a continuous recording when the application is ready. */
+    private boolean continuous = false;
+    /** JFR settings to use, "default" keeps the overhead at around 1%. */
+    private String settings = "default";
+    private Duration maxAge = Duration.ofHours(6);
+    private long maxSizeBytes = 250L * 1024 * 1024;
+    private String dumpDirectory = System.getProperty("java.io.tmpdir");
+    /** Dump files kept in the dump directory; older ones are deleted after each dump. */
+    private int maxDumps = 5;
+}
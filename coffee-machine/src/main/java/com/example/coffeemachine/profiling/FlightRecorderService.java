@@ -0,0 +1,116 @@
+package com.example.coffeemachine.profiling;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Manages one in-process continuous JFR recording, so production can be profiled without attaching an agent.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FlightRecorderService {
+    private static final String FILE_PREFIX = "coffee-machine-";
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final FlightRecorderProperties properties;
+    private Recording recording;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnReady() {
+        if (properties.isContinuous()) {
+            start();
+        }
+    }
+
+    public synchronized boolean isRecording() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    public synchronized void start() {
+        if (isRecording()) {
+            return;
+        }
+        try {
+            recording = new Recording(Configuration.getConfiguration(properties.getSettings()));
+        } catch (IOException | ParseException ex) {
+            throw new IllegalStateException("Unknown JFR settings " + properties.getSettings(), ex);
+        }
+        recording.setName("coffee-machine");
+        recording.setToDisk(true);
+        recording.setMaxAge(properties.getMaxAge());
+        recording.setMaxSize(properties.getMaxSizeBytes());
+        recording.enable(PurchaseEvent.class);
+        recording.enable(PurchasePhaseEvent.class);
+        recording.enable(InsertCoinEvent.class);
+        recording.enable(CatalogReadEvent.class);
+        recording.start();
+        log.info("Continuous flight recording started with '{}' settings", properties.getSettings());
+    }
+
+    /**
+     * Writes what the running recording holds so far to a new file and keeps recording. Only the newest
+     * {@code max-dumps} dump files are kept.
+     */
+    public synchronized Path dump() {
+        if (!isRecording()) {
+            throw new IllegalStateException("No flight recording is running");
+        }
+        Path file = Path.of(properties.getDumpDirectory(), FILE_PREFIX + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        log.info("Flight recording dumped to {}", file);
+        deleteOldDumps(file);
+        return file;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+            log.info("Flight recording stopped");
+        }
+    }
+
+    private void deleteOldDumps(Path latest) {
+        List<Path> dumps = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(latest.getParent(), FILE_PREFIX + "*.jfr")) {
+            files.forEach(dumps::add);
+        } catch (IOException ex) {
+            log.warn("Could not list old flight recording dumps in {}", latest.getParent(), ex);
+            return;
+        }
+        // The timestamp in the name sorts oldest first.
+        dumps.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        for (Path old : dumps.subList(0, Math.max(0, dumps.size() - Math.max(1, properties.getMaxDumps())))) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException ex) {
+                log.warn("Could not delete old flight recording dump {}", old, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.coffeemachine.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.example.coffeemachine.InsertCoin")
+@Label("Insert Coin")
+@Category({"Coffee Machine", "Coins"})
+@StackTrace(false)
+public class InsertCoinEvent extends jdk.jfr.Event {
+    @Label("Machine Id")
+    String machineId;
+
+    @Label("Coin")
+    String coin;
+
+    @Label("Inserted Coins")
+    int insertedCoins;
+}
@@ -0,0 +1,32 @@
+package com.example.coffeemachine.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.example.coffeemachine.Purchase")
+@Label("Purchase")
+@Description("A complete buyProduct call, excluding the transaction commit")
+@Category({"Coffee Machine", "Purchase"})
+@StackTrace(false)
+public class PurchaseEvent extends jdk.jfr.Event {
+    @Label("Machine Id")
+    String machineId;
+
+    @Label("Product Id")
+    long productId;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Inserted Coins")
+    int insertedCoins;
+
+    @Label("Inserted Amount")
+    int insertedAmount;
+
+    @Label("Change Coins")
+    int changeCoins;
+}
@@ -0,0 +1,8 @@
+package com.example.coffeemachine.profiling;
+
+public enum PurchasePhase {
+    LOOKUP,
+    CHANGE,
+    UPDATE,
+    COMMIT
+}
@@ -0,0 +1,26 @@
+package com.example.coffeemachine.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.example.coffeemachine.PurchasePhase")
+@Label("Purchase Phase")
+@Description("One phase of buyProduct: product lookup, change calculation, stock update or transaction commit")
+@Category({"Coffee Machine", "Purchase"})
+@StackTrace(false)
+public class PurchasePhaseEvent extends jdk.jfr.Event {
+    @Label("Machine Id")
+    String machineId;
+
+    @Label("Product Id")
+    long productId;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,145 @@
+package com.example.coffeemachine.profiling;
+
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.InsufficientAmountException;
+import com.example.coffeemachine.exception.NotEnoughChangeException;
+import com.example.coffeemachine.exception.ProductNotFoundException;
+import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.state.MachineContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Emits the JFR events of the purchase path. Event objects are only committed while a recording
+ * has them enabled, so the cost outside a recording is an allocation and a clock read.
+ */
+public final class VendingProfiler {
+    public static final String OK = "ok";
+
+    private VendingProfiler() {
+    }
+
+    public static PurchaseEvent beginPurchase(long productId) {
+        PurchaseEvent event = new PurchaseEvent();
+        event.machineId = MachineContext.currentMachineId();
+        event.productId = productId;
+        event.begin();
+        return event;
+    }
+
+    public static void endPurchase(PurchaseEvent event, int insertedCoins, int insertedAmount,
+                                   Map<CoinEnum, Integer> change, RuntimeException failure) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.insertedCoins = insertedCoins;
+            event.insertedAmount = insertedAmount;
+            event.changeCoins = change == null ? 0 : change.values().stream().mapToInt(Integer::intValue).sum();
+            event.outcome = outcome(failure);
+            event.commit();
+        }
+    }
+
+    public static <T> T phase(PurchasePhase phase, long productId, Supplier<T> body) {
+        PurchasePhaseEvent event = beginPhase(phase, productId);
+        try {
+            T result = body.get();
+            endPhase(event, null);
+            return result;
+        } catch (RuntimeException ex) {
+            endPhase(event, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Times the commit of the surrounding transaction, which happens after buyProduct has returned.
+     */
+    public static void profileCommit(long productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private PurchasePhaseEvent event;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                event = beginPhase(PurchasePhase.COMMIT, productId);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (event != null) {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.outcome = status == STATUS_COMMITTED ? OK : "rolled_back";
+                        event.commit();
+                    }
+                }
+            }
+        });
+    }
+
+    public static void insertCoin(CoinEnum coin, int insertedCoins) {
+        InsertCoinEvent event = new InsertCoinEvent();
+        if (event.isEnabled()) {
+            event.machineId = MachineContext.currentMachineId();
+            event.coin = coin.name();
+            event.insertedCoins = insertedCoins;
+            event.commit();
+        }
+    }
+
+    public static CatalogReadEvent beginCatalogRead() {
+        CatalogReadEvent event = new CatalogReadEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endCatalogRead(CatalogReadEvent event, int productCount, RuntimeException failure) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.productCount = productCount;
+            event.outcome = outcome(failure);
+            event.commit();
+        }
+    }
+
+    private static PurchasePhaseEvent beginPhase(PurchasePhase phase, long productId) {
+        PurchasePhaseEvent event = new PurchasePhaseEvent();
+        event.machineId = MachineContext.currentMachineId();
+        event.productId = productId;
+        event.phase = phase.name().toLowerCase();
+        event.begin();
+        return event;
+    }
+
+    private static void endPhase(PurchasePhaseEvent event, RuntimeException failure) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = outcome(failure);
+            event.commit();
+        }
+    }
+
+    private static String outcome(RuntimeException failure) {
+        if (failure == null) {
+            return OK;
+        }
+        if (failure instanceof ProductNotFoundException) {
+            return "product_not_found";
+        }
+        if (failure instanceof ProductOutOfStockException) {
+            return "out_of_stock";
+        }
+        if (failure instanceof InsufficientAmountException) {
+            return "insufficient_amount";
+        }
+        if (failure instanceof NotEnoughChangeException) {
+            return "not_enough_change";
+        }
+        return failure.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.coffeemachine.protocol;
+
+import com.example.coffeemachine.cluster.ClusterMembership;
+import com.example.coffeemachine.command.MachineCommand;
+import com.example.coffeemachine.command.MachineCommandQueue;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.InsufficientAmountException;
+import com.example.coffeemachine.exception.MachineHandoffException;
+import com.example.coffeemachine.exception.NotEnoughChangeException;
+import com.example.coffeemachine.exception.ProductNotFoundException;
+import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.exception.ServiceOverloadedException;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Maps decoded protocol requests onto the same {@link VendingService} operations the HTTP API uses. When the
+ * command queue is enabled, coin and purchase requests go through the machine's mailbox like HTTP ones, and
+ * the response is written once the command's ticket completes. In cluster mode, frames for machines this node
+ * does not own are answered with {@link ResponseStatus#NOT_OWNER}.
+ */
+@Slf4j
+public class BinaryCommandHandler {
+    private static final CoinEnum[] COINS = CoinEnum.values();
+    private static final CompletableFuture<Void> ANSWERED = CompletableFuture.completedFuture(null);
+
+    private final VendingService vendingService;
+    private final MachineCommandQueue commandQueue;
+    private final ClusterMembership membership;
+
+    /**
+     * @param commandQueue the machines' mailboxes, or null when commands run on the calling thread
+     * @param membership   the cluster's machine ownership, or null outside cluster mode
+     */
+    public BinaryCommandHandler(VendingService vendingService, MachineCommandQueue commandQueue, ClusterMembership membership) {
+        this.vendingService = vendingService;
+        this.commandQueue = commandQueue;
+        this.membership = membership;
+    }
+
+    /**
+     * Executes the request and writes its response.
+     *
+     * @return completes when the response has been written
+     */
+    public CompletableFuture<Void> handle(BinaryFrame.Request request, ByteBuffer response) {
+        String machineId = request.machineId() == 0 ? MachineContext.DEFAULT_MACHINE_ID : String.valueOf(request.machineId());
+        MachineContext.setMachineId(machineId);
+        try {
+            return execute(machineId, request, response);
+        } finally {
+            MachineContext.clear();
+        }
+    }
+
+    private CompletableFuture<Void> execute(String machineId, BinaryFrame.Request request, ByteBuffer response) {
+        Opcode opcode = Opcode.fromCode(request.opcode());
+        if (opcode == null) {
+            BinaryFrame.writeResponseHeader(response, request.opcode(), ResponseStatus.BAD_REQUEST, 0, request.machineId());
+            return ANSWERED;
+        }
+        try {
+            if (membership != null) {
+                if (!membership.isLocal(machineId)) {
+                    writeStatus(response, request, ResponseStatus.NOT_OWNER);
+                    return ANSWERED;
+                }
+                membership.ensureOwned(machineId);
+            }
+            switch (opcode) {
+                case INSERT_COIN -> {
+                    if (request.coinOrdinal() >= COINS.length) {
+                        writeStatus(response, request, ResponseStatus.BAD_REQUEST);
+                        return ANSWERED;
+                    }
+                    CoinEnum coin = COINS[request.coinOrdinal()];
+                    if (commandQueue != null) {
+                        return submit(new MachineCommand.InsertCoin(coin), request, response,
+                                ignored -> writeStatus(response, request, ResponseStatus.OK));
+                    }
+                    vendingService.insertCoin(coin);
+                    writeStatus(response, request, ResponseStatus.OK);
+                }
+                case BUY_PRODUCT -> {
+                    if (commandQueue != null) {
+                        return submit(new MachineCommand.BuyProduct(request.productId()), request, response,
+                                change -> writeCoinCounts(response, request, coinCounts(change)));
+                    }
+                    Map<CoinEnum, Integer> change = vendingService.buyProduct(request.productId());
+                    writeCoinCounts(response, request, change);
+                }
+                case RETURN_COINS -> {
+                    if (commandQueue != null) {
+                        return submit(new MachineCommand.ReturnCoins(), request, response,
+                                coins -> writeCoinCounts(response, request, coinCounts(coins)));
+                    }
+                    writeCoinCounts(response, request, coinCounts(vendingService.returnCoins()));
+                }
+                case TOTAL_INSERTED -> {
+                    int total = vendingService.getTotalInsertedSum();
+                    BinaryFrame.writeResponseHeader(response, request.opcode(), ResponseStatus.OK, Integer.BYTES, request.machineId());
+                    response.putInt(total);
+                }
+            }
+        } catch (RuntimeException ex) {
+            writeFailure(response, request, opcode, ex);
+        }
+        return ANSWERED;
+    }
+
+    private CompletableFuture<Void> submit(MachineCommand command, BinaryFrame.Request request, ByteBuffer response,
+                                           Consumer<Object> reply) {
+        return commandQueue.submit(command).getResult().handle((value, failure) -> {
+            if (failure == null) {
+                reply.accept(value);
+                return null;
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            writeFailure(response, request, Opcode.fromCode(request.opcode()),
+                    cause instanceof RuntimeException ex ? ex : new IllegalStateException(cause));
+            return null;
+        });
+    }
+
+    private void writeFailure(ByteBuffer response, BinaryFrame.Request request, Opcode opcode, RuntimeException failure) {
+        ResponseStatus status = switch (failure) {
+            case ProductNotFoundException ex -> ResponseStatus.PRODUCT_NOT_FOUND;
+            case ProductOutOfStockException ex -> ResponseStatus.OUT_OF_STOCK;
+            case InsufficientAmountException ex -> ResponseStatus.INSUFFICIENT_AMOUNT;
+            case NotEnoughChangeException ex -> ResponseStatus.NOT_ENOUGH_CHANGE;
+            case ServiceOverloadedException ex -> ResponseStatus.OVERLOADED;
+            case MachineHandoffException ex -> ResponseStatus.NOT_OWNER;
+            default -> {
+                log.error("Binary protocol request {} failed", opcode, failure);
+                yield ResponseStatus.ERROR;
+            }
+        };
+        response.clear();
+        writeStatus(response, request, status);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<CoinEnum, Integer> coinCounts(Object coins) {
+        if (coins instanceof Map<?, ?> counts) {
+            return (Map<CoinEnum, Integer>) counts;
+        }
+        Map<CoinEnum, Integer> counts = new EnumMap<>(CoinEnum.class);
+        ((List<CoinEnum>) coins).forEach(coin -> counts.merge(coin, 1, Integer::sum));
+        return counts;
+    }
+
+    private void writeStatus(ByteBuffer response, BinaryFrame.Request request, ResponseStatus status) {
+        BinaryFrame.writeResponseHeader(response, request.opcode(), status, 0, request.machineId());
+    }
+
+    private void writeCoinCounts(ByteBuffer response, BinaryFrame.Request request, Map<CoinEnum, Integer> counts) {
+        BinaryFrame.writeResponseHeader(response, request.opcode(), ResponseStatus.OK, BinaryFrame.COIN_COUNTS_SIZE, request.machineId());
+        BinaryFrame.writeCoinCounts(response, counts);
+    }
+}
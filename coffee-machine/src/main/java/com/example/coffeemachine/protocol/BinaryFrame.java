@@ -0,0 +1,70 @@
+package com.example.coffeemachine.protocol;
+
+import com.example.coffeemachine.enums.CoinEnum;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Fixed-layout frames of the controller protocol. All values are big-endian.
+ * <pre>
+ * request  (16 bytes): opcode:u8 | coin ordinal:u8 | reserved:u16 | machine id:i32 | product id:i64
+ * response (8 bytes + payload): opcode:u8 | status:u8 | payload length:u16 | machine id:i32 | payload
+ * </pre>
+ * Machine id 0 addresses the default machine. BUY_PRODUCT and RETURN_COINS carry one u16 count
+ * per {@link CoinEnum} ordinal, TOTAL_INSERTED an i32.
+ */
+public final class BinaryFrame {
+    public static final int REQUEST_SIZE = 16;
+    public static final int RESPONSE_HEADER_SIZE = 8;
+    public static final int COIN_COUNTS_SIZE = CoinEnum.values().length * Short.BYTES;
+    public static final int MAX_RESPONSE_SIZE = RESPONSE_HEADER_SIZE + COIN_COUNTS_SIZE;
+
+    private BinaryFrame() {
+    }
+
+    public record Request(byte opcode, int coinOrdinal, int machineId, long productId) {
+    }
+
+    public static Request readRequest(ByteBuffer buffer) {
+        byte opcode = buffer.get();
+        int coinOrdinal = Byte.toUnsignedInt(buffer.get());
+        buffer.getShort();
+        int machineId = buffer.getInt();
+        long productId = buffer.getLong();
+        return new Request(opcode, coinOrdinal, machineId, productId);
+    }
+
+    public static void writeRequest(ByteBuffer buffer, Opcode opcode, CoinEnum coin, int machineId, long productId) {
+        buffer.put(opcode.getCode());
+        buffer.put(coin == null ? 0 : (byte) coin.ordinal());
+        buffer.putShort((short) 0);
+        buffer.putInt(machineId);
+        buffer.putLong(productId);
+    }
+
+    public static void writeResponseHeader(ByteBuffer buffer, byte opcode, ResponseStatus status, int payloadLength, int machineId) {
+        buffer.put(opcode);
+        buffer.put(status.getCode());
+        buffer.putShort((short) payloadLength);
+        buffer.putInt(machineId);
+    }
+
+    public static void writeCoinCounts(ByteBuffer buffer, Map<CoinEnum, Integer> counts) {
+        for (CoinEnum coin : CoinEnum.values()) {
+            buffer.putShort(counts.getOrDefault(coin, 0).shortValue());
+        }
+    }
+
+    public static Map<CoinEnum, Integer> readCoinCounts(ByteBuffer buffer) {
+        Map<CoinEnum, Integer> counts = new EnumMap<>(CoinEnum.class);
+        for (CoinEnum coin : CoinEnum.values()) {
+            int count = Short.toUnsignedInt(buffer.getShort());
+            if (count > 0) {
+                counts.put(coin, count);
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.coffeemachine.protocol;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "vending.binary")
+public class BinaryProtocolProperties {
+    private boolean enabled = false;
+    private String host = "0.0.0.0";
+    private int port = 9090;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int readBufferSize = 4096;
+    private int maxPooledBuffers = 1024;
+    /** Requests of one connection parsed but not yet answered; above this the connection is not read. */
+    private int maxPipelinedRequests = 256;
+}
@@ -0,0 +1,303 @@
+package com.example.coffeemachine.protocol;
+
+import com.example.coffeemachine.cluster.ClusterMembership;
+import com.example.coffeemachine.command.MachineCommandQueue;
+import com.example.coffeemachine.service.VendingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional TCP listener for machine controllers speaking the {@link BinaryFrame} protocol.
+ * A single selector thread does all socket I/O; requests are executed on a worker pool, one
+ * connection at a time and in arrival order. Clients may pipeline frames; once a connection has
+ * {@code max-pipelined-requests} unanswered, it is not read until responses have been written.
+ * With the command queue enabled, a connection's coin and purchase requests are all submitted to
+ * the machine's mailbox before the worker waits for their tickets.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.binary", name = "enabled", havingValue = "true")
+public class BinaryProtocolServer implements SmartLifecycle {
+    private static final int MAX_GATHERED_WRITES = 64;
+
+    private final BinaryProtocolProperties properties;
+    private final BinaryCommandHandler handler;
+    private final DirectBufferPool readBuffers;
+    private final DirectBufferPool responseBuffers;
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private ExecutorService workers;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public BinaryProtocolServer(BinaryProtocolProperties properties, VendingService vendingService,
+                                ObjectProvider<MachineCommandQueue> commandQueue, ObjectProvider<ClusterMembership> membership) {
+        this.properties = properties;
+        this.handler = new BinaryCommandHandler(vendingService, commandQueue.getIfAvailable(), membership.getIfAvailable());
+        this.readBuffers = new DirectBufferPool(properties.getReadBufferSize(), properties.getMaxPooledBuffers());
+        this.responseBuffers = new DirectBufferPool(BinaryFrame.MAX_RESPONSE_SIZE, properties.getMaxPooledBuffers());
+    }
+
+    @Override
+    public void start() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(properties.getHost(), properties.getPort()));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open binary protocol port " + properties.getPort(), ex);
+        }
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getWorkerThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "binary-worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        selectorThread = new Thread(this::runLoop, "binary-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("Binary protocol listening on port {}", getLocalPort());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException ex) {
+            log.warn("Error while closing binary protocol port", ex);
+        }
+        log.info("Binary protocol listener stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                selector.select();
+                enablePendingWrites();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+            } catch (IOException ex) {
+                log.error("Binary protocol selector failed", ex);
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(connection);
+            }
+        } catch (IOException ex) {
+            log.debug("Closing binary protocol connection {}", connection.channel, ex);
+            close(connection);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException ex) {
+            log.warn("Could not accept binary protocol connection", ex);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer buffer = connection.readBuffer;
+        if (connection.channel.read(buffer) < 0) {
+            close(connection);
+            return;
+        }
+        parseRequests(connection);
+    }
+
+    private void parseRequests(Connection connection) {
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        while (buffer.remaining() >= BinaryFrame.REQUEST_SIZE
+                && connection.inFlight.get() < properties.getMaxPipelinedRequests()) {
+            connection.requests.add(BinaryFrame.readRequest(buffer));
+            connection.inFlight.incrementAndGet();
+        }
+        buffer.compact();
+        updateInterest(connection);
+        schedule(connection);
+    }
+
+    /**
+     * Reads only while the connection is under its pipelining limit, and writes while responses are waiting.
+     * Runs on the selector thread.
+     */
+    private void updateInterest(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        int ops = 0;
+        if (connection.inFlight.get() < properties.getMaxPipelinedRequests()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (!connection.writing.isEmpty() || !connection.responses.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void schedule(Connection connection) {
+        if (!connection.requests.isEmpty() && !connection.closed
+                && connection.processing.compareAndSet(false, true)) {
+            workers.execute(() -> process(connection));
+        }
+    }
+
+    private void process(Connection connection) {
+        try {
+            // Hand every waiting request to the handler first, so queued commands of one connection can share a
+            // batch, then answer them in order as they complete.
+            List<ByteBuffer> responses = new ArrayList<>();
+            List<CompletableFuture<Void>> answered = new ArrayList<>();
+            BinaryFrame.Request request;
+            while (!connection.closed && (request = connection.requests.poll()) != null) {
+                ByteBuffer response = responseBuffers.acquire();
+                responses.add(response);
+                answered.add(handler.handle(request, response));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                answered.get(i).join();
+                ByteBuffer response = responses.get(i);
+                response.flip();
+                connection.responses.add(response);
+            }
+            pendingWrites.add(connection);
+            selector.wakeup();
+        } finally {
+            connection.processing.set(false);
+            schedule(connection);
+        }
+    }
+
+    private void enablePendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            updateInterest(connection);
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer response;
+        while (connection.writing.size() < MAX_GATHERED_WRITES && (response = connection.responses.poll()) != null) {
+            connection.writing.add(response);
+        }
+        connection.channel.write(connection.writing.toArray(new ByteBuffer[0]));
+        boolean paused = connection.inFlight.get() >= properties.getMaxPipelinedRequests();
+        while (!connection.writing.isEmpty() && !connection.writing.peek().hasRemaining()) {
+            responseBuffers.release(connection.writing.poll());
+            connection.inFlight.decrementAndGet();
+        }
+        if (paused && connection.inFlight.get() < properties.getMaxPipelinedRequests()) {
+            // Frames that arrived while paused are already buffered and will not raise another read event
+            parseRequests(connection);
+        } else {
+            updateInterest(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        connection.closed = true;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {
+            log.debug("Error while closing binary protocol connection", ex);
+        }
+        readBuffers.release(connection.readBuffer);
+        connection.writing.forEach(responseBuffers::release);
+        connection.writing.clear();
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = readBuffers.acquire();
+        private final Queue<BinaryFrame.Request> requests = new ConcurrentLinkedQueue<>();
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+        private final AtomicBoolean processing = new AtomicBoolean();
+        /** Requests parsed whose response has not been written completely. */
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private SelectionKey key;
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.coffeemachine.protocol;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public enum Opcode {
+    INSERT_COIN((byte) 1),
+    BUY_PRODUCT((byte) 2),
+    RETURN_COINS((byte) 3),
+    TOTAL_INSERTED((byte) 4);
+
+    private final byte code;
+
+    public static Opcode fromCode(byte code) {
+        for (Opcode opcode : values()) {
+            if (opcode.code == code) {
+                return opcode;
+            }
+        }
+        return null;
+    }
+}
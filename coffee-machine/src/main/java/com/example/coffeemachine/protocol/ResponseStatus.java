@@ -0,0 +1,29 @@
+package com.example.coffeemachine.protocol;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public enum ResponseStatus {
+    OK((byte) 0),
+    PRODUCT_NOT_FOUND((byte) 1),
+    OUT_OF_STOCK((byte) 2),
+    INSUFFICIENT_AMOUNT((byte) 3),
+    NOT_ENOUGH_CHANGE((byte) 4),
+    BAD_REQUEST((byte) 5),
+    ERROR((byte) 6),
+    OVERLOADED((byte) 7),
+    NOT_OWNER((byte) 8);
+
+    private final byte code;
+
+    public static ResponseStatus fromCode(byte code) {
+        for (ResponseStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        return ERROR;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.coffeemachine.repository;
+
+import com.example.coffeemachine.entity.ClusterNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ClusterNodeRepository extends JpaRepository<ClusterNode, String> {
+    List<ClusterNode> findByLastHeartbeatAfter(Instant cutoff);
+}
@@ -0,0 +1,13 @@
+package com.example.coffeemachine.repository;
+
+import com.example.coffeemachine.entity.Coin;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface CoinRepository extends JpaRepository<Coin, Long> {
+    List<Coin> findByMachineId(String machineId);
+
+    List<Coin> findByUpdatedAtGreaterThanEqual(Instant since);
+}
@@ -0,0 +1,33 @@
+package com.example.coffeemachine.repository;
+
+import com.example.coffeemachine.entity.MachineSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface MachineSessionRepository extends JpaRepository<MachineSession, String> {
+
+    /**
+     * Takes ownership of a session that is free, already ours, or held by a node whose heartbeat expired.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MachineSession s SET s.ownerNodeId = :nodeId WHERE s.machineId = :machineId AND ("
+            + "s.ownerNodeId IS NULL OR s.ownerNodeId = :nodeId OR s.ownerNodeId NOT IN "
+            + "(SELECT n.nodeId FROM ClusterNode n WHERE n.lastHeartbeat > :cutoff))")
+    int claim(@Param("machineId") String machineId, @Param("nodeId") String nodeId, @Param("cutoff") Instant cutoff);
+
+    /**
+     * Writes the session state only while {@code nodeId} still owns the row, and hands the row to {@code newOwner}.
+     * Returns 0 when another node has claimed the machine in the meantime.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MachineSession s SET s.insertedCoins = :insertedCoins, s.availableChange = :availableChange, "
+            + "s.stateVersion = :stateVersion, s.ownerNodeId = :newOwner, s.updatedAt = CURRENT_TIMESTAMP "
+            + "WHERE s.machineId = :machineId AND s.ownerNodeId = :nodeId")
+    int saveIfOwned(@Param("machineId") String machineId, @Param("nodeId") String nodeId, @Param("newOwner") String newOwner,
+                    @Param("insertedCoins") String insertedCoins, @Param("availableChange") String availableChange,
+                    @Param("stateVersion") long stateVersion);
+}
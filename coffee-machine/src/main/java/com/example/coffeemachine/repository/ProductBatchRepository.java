@@ -0,0 +1,21 @@
+package com.example.coffeemachine.repository;
+
+import java.util.Map;
+import java.util.Set;
+
+public interface ProductBatchRepository {
+    /**
+     * Sets the quantity of every given product id in one JDBC batch.
+     *
+     * @return the product ids that did not match any row
+     */
+    Set<Long> updateQuantities(Map<Long, Integer> quantities);
+
+    /**
+     * Takes the given number of units out of stock for every product id in one JDBC batch. A product that
+     * has fewer units left is emptied instead of going negative.
+     *
+     * @return for every product that could not cover its units, the number of units that were missing
+     */
+    Map<Long, Integer> takeQuantities(Map<Long, Integer> quantities);
+}
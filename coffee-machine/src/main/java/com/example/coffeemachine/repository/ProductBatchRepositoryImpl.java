@@ -0,0 +1,67 @@
+package com.example.coffeemachine.repository;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RequiredArgsConstructor
+public class ProductBatchRepositoryImpl implements ProductBatchRepository {
+    /** Marks the row as changed for optimistic locking and the incremental state sync. */
+    private static final String TOUCH = "version = version + 1, updated_at = CURRENT_TIMESTAMP";
+    private static final String UPDATE_QUANTITY = "UPDATE products SET quantity = ?, " + TOUCH + " WHERE id = ?";
+    private static final String TAKE_QUANTITY = "UPDATE products SET quantity = quantity - ?, " + TOUCH + " WHERE id = ? AND quantity >= ?";
+    private static final String SELECT_QUANTITY = "SELECT quantity FROM products WHERE id = ?";
+    private static final String EMPTY_QUANTITY = "UPDATE products SET quantity = 0, " + TOUCH + " WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    @Override
+    public Set<Long> updateQuantities(Map<Long, Integer> quantities) {
+        List<Long> ids = new ArrayList<>(quantities.keySet());
+        List<Object[]> arguments = ids.stream()
+                .map(id -> new Object[]{quantities.get(id), id})
+                .toList();
+        // Same contract as @Modifying(flushAutomatically = true, clearAutomatically = true)
+        entityManager.flush();
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_QUANTITY, arguments);
+        entityManager.clear();
+
+        Set<Long> missing = new HashSet<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                missing.add(ids.get(i));
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public Map<Long, Integer> takeQuantities(Map<Long, Integer> quantities) {
+        List<Long> ids = new ArrayList<>(quantities.keySet());
+        List<Object[]> arguments = ids.stream()
+                .map(id -> new Object[]{quantities.get(id), id, quantities.get(id)})
+                .toList();
+        entityManager.flush();
+        int[] updated = jdbcTemplate.batchUpdate(TAKE_QUANTITY, arguments);
+
+        Map<Long, Integer> shortfalls = new HashMap<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Long id = ids.get(i);
+                int left = jdbcTemplate.queryForList(SELECT_QUANTITY, Integer.class, id).stream().findFirst().orElse(0);
+                jdbcTemplate.update(EMPTY_QUANTITY, id);
+                shortfalls.put(id, quantities.get(id) - left);
+            }
+        }
+        entityManager.clear();
+        return shortfalls;
+    }
+}
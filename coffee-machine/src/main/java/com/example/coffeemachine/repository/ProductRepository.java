@@ -1,10 +1,33 @@
 package com.example.coffeemachine.repository;
 
 import com.example.coffeemachine.entity.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductBatchRepository {
     Optional<Product> findByProductName(String productName);
+
+    /**
+     * Takes one unit out of stock in a single statement, so concurrent purchases can never
+     * oversell or lose a decrement. Returns 0 when the product is missing or already sold out.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Product p set p.quantity = p.quantity - 1, p.version = p.version + 1, p.updatedAt = current_timestamp "
+            + "where p.id = :id and p.quantity > 0")
+    int decrementQuantity(@Param("id") Long id);
+
+    /**
+     * Rows written after the {@code (updatedAt, id)} position, oldest first, so a caller can page through
+     * the changes without skipping rows that share a timestamp.
+     */
+    @Query("select p from Product p where p.updatedAt > :since or (p.updatedAt = :since and p.id > :afterId) "
+            + "order by p.updatedAt, p.id")
+    List<Product> findChangedSince(@Param("since") Instant since, @Param("afterId") long afterId, Limit limit);
 }
@@ -0,0 +1,7 @@
+package com.example.coffeemachine.repository;
+
+import com.example.coffeemachine.entity.SalesJournalCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SalesJournalCheckpointRepository extends JpaRepository<SalesJournalCheckpoint, String> {
+}
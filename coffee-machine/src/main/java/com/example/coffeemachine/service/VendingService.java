@@ -12,7 +12,9 @@ public interface VendingService {
     Map<CoinEnum, Integer> buyProduct(Long productId);
     void insertCoin(CoinEnum coin);
     List<Product> getAllProducts();
+    Product getProduct(Long id);
     List<CoinEnum> returnCoins();
     int getTotalInsertedSum();
     double getCurrentChangeBallance();
+    List<Product> serviceVisit(Map<Long, Integer> quantities, Map<CoinEnum, Integer> coins);
 }
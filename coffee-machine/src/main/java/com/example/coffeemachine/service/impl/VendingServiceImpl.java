@@ -1,24 +1,37 @@
 package com.example.coffeemachine.service.impl;
 
+import com.example.coffeemachine.coalescing.Coalesced;
+import com.example.coffeemachine.entity.Coin;
 import com.example.coffeemachine.entity.Product;
 import com.example.coffeemachine.enums.CoinEnum;
-import com.example.coffeemachine.exception.InsufficientAmountException;
-import com.example.coffeemachine.exception.NotEnoughChangeException;
 import com.example.coffeemachine.exception.ProductNotFoundException;
 import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.limiter.ConcurrencyLimited;
+import com.example.coffeemachine.limiter.LimitPriority;
+import com.example.coffeemachine.profiling.CatalogReadEvent;
+import com.example.coffeemachine.profiling.PurchaseEvent;
+import com.example.coffeemachine.profiling.PurchasePhase;
+import com.example.coffeemachine.profiling.VendingProfiler;
+import com.example.coffeemachine.repository.CoinRepository;
 import com.example.coffeemachine.repository.ProductRepository;
 import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.CompactInventory;
+import com.example.coffeemachine.state.MachineContext;
 import com.example.coffeemachine.state.MachineState;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Slf4j
@@ -26,10 +39,12 @@ import java.util.Map;
 public class VendingServiceImpl implements VendingService {
 
     private final ProductRepository productRepository;
+    private final CoinRepository coinRepository;
     private final MachineState machineState;
 
     @Override
     @Transactional
+    @ConcurrencyLimited(LimitPriority.PURCHASE)
     public Product addNewProduct(Product product) {
         Product savedProduct = productRepository.save(product);
         machineState.addProduct(product);
@@ -39,6 +54,7 @@ public class VendingServiceImpl implements VendingService {
 
     @Override
     @Transactional
+    @ConcurrencyLimited(LimitPriority.PURCHASE)
     public Product updateProduct(Long id, Product product) {
         Product existingProduct = productRepository.findById(id)
                 .orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found"));
@@ -62,65 +78,117 @@ public class VendingServiceImpl implements VendingService {
 
     @Override
     @Transactional
+    @ConcurrencyLimited(LimitPriority.PURCHASE)
     public void removeProduct(Long id) {
         Product product = productRepository.findById(id).orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found"));
-        machineState.getInventory().remove(product.getProductName());
+        machineState.removeProduct(product.getId());
         productRepository.deleteById(id);
     }
 
     @Override
     @Transactional
+    @ConcurrencyLimited(LimitPriority.PURCHASE)
     public Map<CoinEnum, Integer> buyProduct(Long productId) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new ProductNotFoundException("Product with ID " + productId + " not found"));
-
-        if (product.getQuantity() <= 0) {
-            throw new ProductOutOfStockException(product.getProductName());
-        }
+        PurchaseEvent purchase = VendingProfiler.beginPurchase(productId);
+        List<CoinEnum> paidCoins = new ArrayList<>();
+        Map<CoinEnum, Integer> changeCoins = new HashMap<>();
+        try {
+            Product product = VendingProfiler.phase(PurchasePhase.LOOKUP, productId, () -> productRepository.findById(productId)
+                    .orElseThrow(() -> {
+                        // Deleted behind our back, the state sync cannot see a row that is gone
+                        machineState.removeProduct(productId);
+                        return new ProductNotFoundException("Product with ID " + productId + " not found");
+                    }));
+
+            if (product.getQuantity() <= 0) {
+                machineState.inventory().setQuantity(productId, product.getQuantity());
+                throw new ProductOutOfStockException(product.getProductName());
+            }
 
-        int totalInserted = machineState.getInsertedCoins().stream()
-                .mapToInt(CoinEnum::getDenomination)
-                .sum();
+            int productPrice = product.getProductPrice();
+
+            // Settle first, so a purchase that cannot be paid never touches the stock. The coins are taken at
+            // once and given back if the stock decrement fails or rolls back; the machine is not locked while
+            // the database works, so other writers of the machine never wait for it.
+            MachineState.PendingUpdate settled = VendingProfiler.phase(PurchasePhase.CHANGE, productId, () -> machineState.updatePending(s -> {
+                paidCoins.clear();
+                paidCoins.addAll(s.insertedCoins());
+                return s.settle(productPrice, changeCoins);
+            }, s -> s.cancelSale(paidCoins, changeCoins)));
+
+            Optional<Product> sold;
+            try {
+                // The row as this sale leaves it; its version lets the machine ignore older rows the state sync read
+                sold = VendingProfiler.phase(PurchasePhase.UPDATE, productId, () -> productRepository.decrementQuantity(productId) == 0
+                        ? Optional.empty()
+                        : productRepository.findById(productId));
+            } catch (RuntimeException ex) {
+                settled.revert();
+                throw ex;
+            }
+            if (sold.isEmpty()) {
+                settled.revert();
+                machineState.inventory().setQuantity(productId, 0);
+                throw new ProductOutOfStockException(product.getProductName());
+            }
 
-        int productPrice = product.getProductPrice();
+            CompactInventory inventory = machineState.inventory();
+            Product committed = sold.get();
+            afterCommit(() -> inventory.putIfNewer(committed));
+            VendingProfiler.profileCommit(productId);
+            VendingProfiler.endPurchase(purchase, paidCoins.size(), totalOf(paidCoins), changeCoins, null);
 
-        if (totalInserted < productPrice) {
-            throw new InsufficientAmountException(totalInserted, productPrice);
+            return changeCoins;
+        } catch (RuntimeException ex) {
+            VendingProfiler.endPurchase(purchase, paidCoins.size(), totalOf(paidCoins), changeCoins, ex);
+            throw ex;
         }
-
-        int change = totalInserted - productPrice;
-        Map<CoinEnum, Integer> changeCoins = calculateChange(change);
-
-        product.setQuantity(product.getQuantity() - 1);
-        Product updatedProduct = this.updateProduct(productId,product);
-
-        machineState.clearInsertedCoins();
-
-        return changeCoins;
     }
 
     @Override
     public void insertCoin(CoinEnum coin) {
         machineState.addInsertedCoin(coin);
+        VendingProfiler.insertCoin(coin, machineState.getInsertedCoins().size());
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @ConcurrencyLimited(LimitPriority.CATALOG)
+    @Coalesced("catalog")
     public List<Product> getAllProducts() {
-        return productRepository.findAll();
+        CatalogReadEvent event = VendingProfiler.beginCatalogRead();
+        try {
+            List<Product> products = productRepository.findAll();
+            VendingProfiler.endCatalogRead(event, products.size(), null);
+            return products;
+        } catch (RuntimeException ex) {
+            VendingProfiler.endCatalogRead(event, 0, ex);
+            throw ex;
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @ConcurrencyLimited(LimitPriority.CATALOG)
+    @Coalesced("product")
+    public Product getProduct(Long id) {
+        return productRepository.findById(id)
+                .orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found"));
     }
 
     @Override
     public List<CoinEnum> returnCoins() {
-        List<CoinEnum> returnedCoins = new ArrayList<>(machineState.getInsertedCoins());
-        machineState.clearInsertedCoins();
+        List<CoinEnum> returnedCoins = new ArrayList<>();
+        machineState.update(s -> {
+            returnedCoins.addAll(s.insertedCoins());
+            return s.withInsertedCoins(List.of());
+        });
         return returnedCoins;
     }
 
     @Override
     public int getTotalInsertedSum() {
-        return machineState.getInsertedCoins().stream()
-                .mapToInt(CoinEnum::getDenomination)
-                .sum();
+        return machineState.snapshot().getTotalInserted();
     }
 
     @Override
@@ -128,28 +196,51 @@ public class VendingServiceImpl implements VendingService {
         return machineState.getCurrentBalance();
     }
 
-    private Map<CoinEnum, Integer> calculateChange(int changeInStotinki) {
-        Map<CoinEnum, Integer> changeCoins = new HashMap<>();
-        Map<CoinEnum, Integer> availableChange = new EnumMap<>(machineState.getAvailableChange());
-        CoinEnum[] coins = CoinEnum.values();
-
-        for (int i = coins.length - 1; i >= 0 && changeInStotinki > 0; i--) {
-            CoinEnum coin = coins[i];
-            int coinValue = coin.getDenomination();
-            int available = availableChange.getOrDefault(coin, 0);
-
-            while (changeInStotinki >= coinValue && available > 0) {
-                changeInStotinki -= coinValue;
-                available--;
-                changeCoins.merge(coin, 1, Integer::sum);
-            }
-
-            availableChange.put(coin, available);
+    @Override
+    @Transactional
+    @ConcurrencyLimited(LimitPriority.PURCHASE)
+    public List<Product> serviceVisit(Map<Long, Integer> quantities, Map<CoinEnum, Integer> coins) {
+        Set<Long> missing = productRepository.updateQuantities(quantities);
+        if (!missing.isEmpty()) {
+            throw new ProductNotFoundException("Products with IDs " + missing + " not found");
         }
-        if (changeInStotinki > 0) {
-            throw new NotEnoughChangeException();
+        List<Product> restocked = productRepository.findAllById(quantities.keySet());
+
+        String machineId = MachineContext.currentMachineId();
+        Map<CoinEnum, Coin> storedCoins = new EnumMap<>(CoinEnum.class);
+        coinRepository.findByMachineId(machineId).forEach(coin -> storedCoins.put(coin.getCoin(), coin));
+        coins.forEach((coin, quantity) -> storedCoins.computeIfAbsent(coin, c -> new Coin(machineId, c, quantity)).setQuantity(quantity));
+        coinRepository.saveAll(storedCoins.values());
+
+        // Stock and float reach the machine together, and only once both are written
+        CompactInventory inventory = machineState.inventory();
+        machineState.updateOnCommit(s -> {
+            restocked.forEach(inventory::putIfNewer);
+            Map<CoinEnum, Integer> availableChange = new EnumMap<>(CoinEnum.class);
+            availableChange.putAll(s.availableChange());
+            availableChange.putAll(coins);
+            return s.withAvailableChange(availableChange);
+        });
+        log.info("Service visit restocked {} products and set coin levels {}", restocked.size(), coins);
+        return restocked;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
-        machineState.setAvailableChange(availableChange);
-        return changeCoins;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static int totalOf(List<CoinEnum> coins) {
+        return coins.stream()
+                .mapToInt(CoinEnum::getDenomination)
+                .sum();
     }
 }
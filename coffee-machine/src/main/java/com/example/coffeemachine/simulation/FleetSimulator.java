@@ -0,0 +1,66 @@
+package com.example.coffeemachine.simulation;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.coffeemachine.state.InventoryProperties;
+import com.example.coffeemachine.state.MachineState;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Offline capacity planning: plays simulated customers against the real purchase, change and stock logic
+ * of every machine in a fleet, with the database replaced by in-memory repositories. Try a price list or
+ * coin float here before rolling it out:
+ * <pre>
+ * java -cp target/classes:$(cat classpath.txt) com.example.coffeemachine.simulation.FleetSimulator \
+ *     --machines=1000 --days=30 --price.COFFEE=240 --float=15
+ * </pre>
+ * A run is deterministic for a given seed, whatever the number of threads.
+ */
+public final class FleetSimulator {
+    private final SimulationConfig config;
+
+    public FleetSimulator(SimulationConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        SimulationConfig config = SimulationConfig.fromArgs(args);
+        new FleetSimulator(config).run().print(System.out, config);
+    }
+
+    public SimulationReport run() {
+        MachineState machineState = new MachineState(new InventoryProperties());
+        AtomicIntegerArray salesPerMinute = new AtomicIntegerArray(config.getDays() * 24 * 60);
+        ExecutorService executor = Executors.newFixedThreadPool(config.getThreads());
+        long start = System.nanoTime();
+        try {
+            List<Future<SimulationReport>> machines = new ArrayList<>();
+            for (int i = 0; i < config.getMachines(); i++) {
+                MachineSimulation machine = new MachineSimulation(config, machineState, i, salesPerMinute);
+                machines.add(executor.submit(machine::run));
+            }
+            SimulationReport fleet = new SimulationReport();
+            for (Future<SimulationReport> machine : machines) {
+                fleet.merge(machine.get());
+            }
+            fleet.finish(salesPerMinute, System.nanoTime() - start);
+            return fleet;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Simulation failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.coffeemachine.simulation;
+
+import com.example.coffeemachine.entity.Coin;
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.repository.CoinRepository;
+import com.example.coffeemachine.repository.ProductRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Map-backed stand-ins for the repositories of one machine, implementing just the calls
+ * {@code VendingServiceImpl} makes. Anything else fails loudly so the simulator never runs on a silent stub.
+ */
+final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static ProductRepository products() {
+        Map<Long, Product> rows = new HashMap<>();
+        long[] nextId = {1};
+        return proxy(ProductRepository.class, (name, args) -> switch (name) {
+            case "save" -> {
+                Product product = (Product) args[0];
+                if (product.getId() == null) {
+                    product.setId(nextId[0]++);
+                }
+                rows.put(product.getId(), product);
+                yield product;
+            }
+            case "findById" -> Optional.ofNullable(rows.get((Long) args[0]));
+            case "findAll" -> new ArrayList<>(rows.values());
+            case "findAllById" -> {
+                List<Product> found = new ArrayList<>();
+                ((Iterable<Long>) args[0]).forEach(id -> Optional.ofNullable(rows.get(id)).ifPresent(found::add));
+                yield found;
+            }
+            case "decrementQuantity" -> {
+                Product product = rows.get((Long) args[0]);
+                if (product == null || product.getQuantity() <= 0) {
+                    yield 0;
+                }
+                product.setQuantity(product.getQuantity() - 1);
+                product.setVersion(product.getVersion() == null ? 1 : product.getVersion() + 1);
+                yield 1;
+            }
+            case "updateQuantities" -> {
+                Set<Long> missing = new HashSet<>();
+                ((Map<Long, Integer>) args[0]).forEach((id, quantity) -> {
+                    Product product = rows.get(id);
+                    if (product == null) {
+                        missing.add(id);
+                    } else {
+                        product.setQuantity(quantity);
+                        product.setVersion(product.getVersion() == null ? 1 : product.getVersion() + 1);
+                    }
+                });
+                yield missing;
+            }
+            default -> throw new UnsupportedOperationException(String.format("ProductRepository.%s is not simulated", name));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    static CoinRepository coins() {
+        Map<CoinEnum, Coin> rows = new EnumMap<>(CoinEnum.class);
+        return proxy(CoinRepository.class, (name, args) -> switch (name) {
+            case "findAll", "findByMachineId" -> new ArrayList<>(rows.values());
+            case "saveAll" -> {
+                List<Coin> saved = new ArrayList<>();
+                ((Iterable<Coin>) args[0]).forEach(coin -> {
+                    rows.put(coin.getCoin(), coin);
+                    saved.add(coin);
+                });
+                yield saved;
+            }
+            default -> throw new UnsupportedOperationException(String.format("CoinRepository.%s is not simulated", name));
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> switch (method.getName()) {
+            case "toString" -> "InMemory" + type.getSimpleName();
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> handler.invoke(method.getName(), args);
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocationHandler));
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+}
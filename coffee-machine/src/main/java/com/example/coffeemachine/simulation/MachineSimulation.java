@@ -0,0 +1,213 @@
+package com.example.coffeemachine.simulation;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.exception.NotEnoughChangeException;
+import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.service.impl.VendingServiceImpl;
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.state.MachineState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Runs one machine through the simulated period. Customer arrivals and service visits are events on a
+ * queue ordered by simulated time, in seconds, and each one is handled by a real {@link VendingServiceImpl}.
+ * Machines do not interact, so the fleet runs them in parallel.
+ */
+final class MachineSimulation {
+    private static final long HOUR = 3600;
+    private static final long DAY = 24 * HOUR;
+    private static final ItemEnum[] ITEMS = ItemEnum.values();
+    private static final CoinEnum[] COINS = CoinEnum.values();
+
+    private final SimulationConfig config;
+    private final MachineState machineState;
+    private final String machineId;
+    private final SplittableRandom random;
+    private final AtomicIntegerArray salesPerMinute;
+    private final SimulationReport report = new SimulationReport();
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final long[] productIds = new long[ITEMS.length];
+    private final double maxArrivalRate;
+
+    private VendingService service;
+    private long lastVisit;
+    private boolean dry;
+
+    MachineSimulation(SimulationConfig config, MachineState machineState, int index, AtomicIntegerArray salesPerMinute) {
+        this.config = config;
+        this.machineState = machineState;
+        this.machineId = "sim-" + index;
+        this.random = new SplittableRandom(config.getSeed() * 0x9E3779B97F4A7C15L + index);
+        this.salesPerMinute = salesPerMinute;
+        double peak = 0;
+        for (double share : SimulationConfig.HOURLY_PROFILE) {
+            peak = Math.max(peak, share);
+        }
+        this.maxArrivalRate = config.getArrivalsPerHour() * peak / HOUR;
+    }
+
+    SimulationReport run() {
+        MachineContext.setMachineId(machineId);
+        try {
+            service = new VendingServiceImpl(InMemoryRepositories.products(), InMemoryRepositories.coins(), machineState);
+            for (ItemEnum item : ITEMS) {
+                Product product = new Product();
+                product.setProductName(item.getName());
+                product.setProductPrice(config.getPrices().get(item));
+                product.setQuantity(0);
+                productIds[item.ordinal()] = service.addNewProduct(product).getId();
+            }
+            serviceVisit(0);
+
+            long end = config.getDays() * DAY;
+            events.add(new Event(nextArrival(0), EventType.ARRIVAL));
+            events.add(new Event(config.getRestockDays() * DAY, EventType.SERVICE_VISIT));
+            for (Event event = events.poll(); event != null && event.time() < end; event = events.poll()) {
+                switch (event.type()) {
+                    case ARRIVAL -> {
+                        customer(event.time());
+                        events.add(new Event(nextArrival(event.time()), EventType.ARRIVAL));
+                    }
+                    case SERVICE_VISIT -> {
+                        serviceVisit(event.time());
+                        events.add(new Event(event.time() + config.getRestockDays() * DAY, EventType.SERVICE_VISIT));
+                    }
+                }
+            }
+            return report;
+        } finally {
+            machineState.evict(machineId);
+            MachineContext.clear();
+        }
+    }
+
+    private void serviceVisit(long now) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (long productId : productIds) {
+            quantities.put(productId, config.getStock());
+        }
+        service.serviceVisit(quantities, config.getCoinFloat());
+        report.serviceInterval();
+        lastVisit = now;
+        dry = false;
+    }
+
+    private void customer(long now) {
+        ItemEnum item = pick(ITEMS, config.getProductMix());
+        int price = config.getPrices().get(item);
+        List<CoinEnum> coins = random.nextDouble() < config.getExactChange() ? exactly(price) : atLeast(price);
+        coins.forEach(service::insertCoin);
+        try {
+            service.buyProduct(productIds[item.ordinal()]);
+            report.sold(item, price);
+            salesPerMinute.incrementAndGet((int) (now / 60));
+        } catch (NotEnoughChangeException ex) {
+            int change = coins.stream().mapToInt(CoinEnum::getDenomination).sum() - price;
+            if (fullFloatCanPay(change)) {
+                report.refused(item, SimulationReport.Refusal.NO_CHANGE);
+                if (!dry) {
+                    dry = true;
+                    report.ranDry(now - lastVisit);
+                }
+            } else {
+                report.refused(item, SimulationReport.Refusal.UNPAYABLE);
+            }
+            service.returnCoins();
+        } catch (ProductOutOfStockException ex) {
+            report.refused(item, SimulationReport.Refusal.SOLD_OUT);
+            service.returnCoins();
+        }
+    }
+
+    /**
+     * Whether the float of a service visit could pay the change, given out the way the machine does. When it
+     * cannot, the refusal says nothing about the float running dry, e.g. for a price that is not a multiple of
+     * the smallest coin.
+     */
+    private boolean fullFloatCanPay(int change) {
+        for (int i = COINS.length - 1; i >= 0; i--) {
+            int coins = Math.min(change / COINS[i].getDenomination(), config.getCoinFloat().getOrDefault(COINS[i], 0));
+            change -= coins * COINS[i].getDenomination();
+        }
+        return change == 0;
+    }
+
+    /**
+     * Draws the next arrival of a Poisson process whose rate follows the hourly profile, by thinning
+     * a process at the peak rate.
+     */
+    private long nextArrival(long now) {
+        double time = now;
+        while (true) {
+            time += -Math.log(1 - random.nextDouble()) / maxArrivalRate;
+            int hour = (int) ((long) time % DAY / HOUR);
+            double rate = config.getArrivalsPerHour() * SimulationConfig.HOURLY_PROFILE[hour] / HOUR;
+            if (random.nextDouble() * maxArrivalRate < rate) {
+                return Math.max(now + 1, (long) time);
+            }
+        }
+    }
+
+    /**
+     * The fewest coins for the smallest amount the coins can make that covers the price.
+     */
+    private List<CoinEnum> exactly(int price) {
+        int smallest = COINS[0].getDenomination();
+        price = (price + smallest - 1) / smallest * smallest;
+        List<CoinEnum> coins = new ArrayList<>();
+        for (int i = COINS.length - 1; i >= 0; i--) {
+            while (price >= COINS[i].getDenomination()) {
+                price -= COINS[i].getDenomination();
+                coins.add(COINS[i]);
+            }
+        }
+        return coins;
+    }
+
+    private List<CoinEnum> atLeast(int price) {
+        List<CoinEnum> coins = new ArrayList<>();
+        int total = 0;
+        while (total < price) {
+            CoinEnum coin = pick(COINS, config.getCoinMix());
+            coins.add(coin);
+            total += coin.getDenomination();
+        }
+        return coins;
+    }
+
+    private <E extends Enum<E>> E pick(E[] values, Map<E, Double> weights) {
+        double sum = 0;
+        for (E value : values) {
+            sum += weights.getOrDefault(value, 0.0);
+        }
+        double target = random.nextDouble() * sum;
+        for (E value : values) {
+            target -= weights.getOrDefault(value, 0.0);
+            if (target < 0) {
+                return value;
+            }
+        }
+        return values[values.length - 1];
+    }
+
+    private enum EventType {
+        ARRIVAL, SERVICE_VISIT
+    }
+
+    private record Event(long time, EventType type) implements Comparable<Event> {
+        @Override
+        public int compareTo(Event other) {
+            return Long.compare(time, other.time);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.coffeemachine.simulation;
+
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import lombok.Data;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Fleet, traffic and price list of one simulation run. Every field can be set from the command line,
+ * e.g. {@code --machines=1000 --days=30 --price.COFFEE=240 --float.TEN_ST=20 --coins.TWO_LV=5}.
+ */
+@Data
+public class SimulationConfig {
+    private int machines = 1000;
+    private int days = 30;
+    private long seed = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    /** Mean customers per machine and hour, spread over the day by {@link #HOURLY_PROFILE}. */
+    private double arrivalsPerHour = 0.5;
+    /** Share of customers who pay the exact price, the others overpay with a random handful of coins. */
+    private double exactChange = 0.3;
+    /** Days between service visits, which refill the stock and reset the coin float. */
+    private int restockDays = 2;
+    /** Units of every product after a service visit. */
+    private int stock = 10;
+    private final Map<ItemEnum, Integer> prices = new EnumMap<>(ItemEnum.class);
+    /** Relative popularity of the products. */
+    private final Map<ItemEnum, Double> productMix = new EnumMap<>(ItemEnum.class);
+    /** Coins of every denomination put in the machine by a service visit. */
+    private final Map<CoinEnum, Integer> coinFloat = new EnumMap<>(CoinEnum.class);
+    /** Relative frequency of the denominations in customers' pockets. */
+    private final Map<CoinEnum, Double> coinMix = new EnumMap<>(CoinEnum.class);
+
+    /**
+     * Relative traffic per hour of the day, with morning, lunch and afternoon peaks. Averages to 1.
+     */
+    static final double[] HOURLY_PROFILE = {
+            0.1, 0.05, 0.05, 0.05, 0.1, 0.3, 0.8, 2.0, 2.6, 1.8, 1.4, 1.6,
+            2.2, 2.0, 1.4, 1.6, 1.8, 1.3, 0.8, 0.5, 0.4, 0.3, 0.2, 0.15};
+
+    public SimulationConfig() {
+        for (ItemEnum item : ItemEnum.values()) {
+            prices.put(item, item.getPrice());
+            productMix.put(item, 1.0);
+        }
+        productMix.put(ItemEnum.COFFEE, 3.0);
+        productMix.put(ItemEnum.CAPPUCCINO, 2.0);
+        for (CoinEnum coin : CoinEnum.values()) {
+            coinFloat.put(coin, 10);
+        }
+        coinMix.put(CoinEnum.TEN_ST, 1.0);
+        coinMix.put(CoinEnum.TWENTY_ST, 1.0);
+        coinMix.put(CoinEnum.FIFTY_ST, 2.0);
+        coinMix.put(CoinEnum.ONE_LV, 3.0);
+        coinMix.put(CoinEnum.TWO_LV, 3.0);
+    }
+
+    public static SimulationConfig fromArgs(String... args) {
+        SimulationConfig config = new SimulationConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException(String.format("Expected --name=value but got %s", arg));
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            config.set(name, value);
+        }
+        return config;
+    }
+
+    private void set(String name, String value) {
+        int dot = name.indexOf('.');
+        String key = dot < 0 ? null : name.substring(dot + 1);
+        switch (dot < 0 ? name : name.substring(0, dot)) {
+            case "machines" -> machines = Integer.parseInt(value);
+            case "days" -> days = Integer.parseInt(value);
+            case "seed" -> seed = Long.parseLong(value);
+            case "threads" -> threads = Integer.parseInt(value);
+            case "arrivals-per-hour" -> arrivalsPerHour = Double.parseDouble(value);
+            case "exact-change" -> exactChange = Double.parseDouble(value);
+            case "restock-days" -> restockDays = Integer.parseInt(value);
+            case "stock" -> stock = Integer.parseInt(value);
+            case "price" -> prices.put(ItemEnum.valueOf(key), Integer.parseInt(value));
+            case "mix" -> productMix.put(ItemEnum.valueOf(key), Double.parseDouble(value));
+            case "float" -> {
+                if (key == null) {
+                    coinFloat.replaceAll((coin, count) -> Integer.parseInt(value));
+                } else {
+                    coinFloat.put(CoinEnum.valueOf(key), Integer.parseInt(value));
+                }
+            }
+            case "coins" -> coinMix.put(CoinEnum.valueOf(key), Double.parseDouble(value));
+            default -> throw new IllegalArgumentException(String.format("Unknown option --%s", name));
+        }
+    }
+}
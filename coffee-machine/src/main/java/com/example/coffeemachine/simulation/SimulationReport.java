@@ -0,0 +1,136 @@
+package com.example.coffeemachine.simulation;
+
+import com.example.coffeemachine.enums.ItemEnum;
+import lombok.Getter;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Outcome of a simulation run. Each machine fills its own report, and the fleet report merges them.
+ */
+@Getter
+public class SimulationReport {
+    private long customers;
+    private long sales;
+    private long revenue;
+    private long refusedNoChange;
+    private long refusedSoldOut;
+    /** Refused because not even a full float could pay the change. */
+    private long refusedUnpayable;
+    private long serviceIntervals;
+    private final long[] salesByProduct = new long[ItemEnum.values().length];
+    private final long[] refusedByProduct = new long[ItemEnum.values().length];
+    /** Seconds from a service visit to the first sale refused for lack of change, one entry per interval that ran dry. */
+    private final List<Long> secondsUntilDry = new ArrayList<>();
+    private long peakSalesPerMinute;
+    private long wallNanos;
+
+    void sold(ItemEnum item, int price) {
+        customers++;
+        sales++;
+        revenue += price;
+        salesByProduct[item.ordinal()]++;
+    }
+
+    void refused(ItemEnum item, Refusal refusal) {
+        customers++;
+        refusedByProduct[item.ordinal()]++;
+        switch (refusal) {
+            case NO_CHANGE -> refusedNoChange++;
+            case SOLD_OUT -> refusedSoldOut++;
+            case UNPAYABLE -> refusedUnpayable++;
+        }
+    }
+
+    void ranDry(long secondsSinceVisit) {
+        secondsUntilDry.add(secondsSinceVisit);
+    }
+
+    void serviceInterval() {
+        serviceIntervals++;
+    }
+
+    void merge(SimulationReport other) {
+        customers += other.customers;
+        sales += other.sales;
+        revenue += other.revenue;
+        refusedNoChange += other.refusedNoChange;
+        refusedSoldOut += other.refusedSoldOut;
+        refusedUnpayable += other.refusedUnpayable;
+        serviceIntervals += other.serviceIntervals;
+        for (int i = 0; i < salesByProduct.length; i++) {
+            salesByProduct[i] += other.salesByProduct[i];
+            refusedByProduct[i] += other.refusedByProduct[i];
+        }
+        secondsUntilDry.addAll(other.secondsUntilDry);
+    }
+
+    void finish(AtomicIntegerArray salesPerMinute, long wallNanos) {
+        for (int i = 0; i < salesPerMinute.length(); i++) {
+            peakSalesPerMinute = Math.max(peakSalesPerMinute, salesPerMinute.get(i));
+        }
+        this.wallNanos = wallNanos;
+        Collections.sort(secondsUntilDry);
+    }
+
+    public double getRefusedNoChangeRate() {
+        return customers == 0 ? 0 : (double) refusedNoChange / customers;
+    }
+
+    public double getRefusedSoldOutRate() {
+        return customers == 0 ? 0 : (double) refusedSoldOut / customers;
+    }
+
+    public double getRefusedUnpayableRate() {
+        return customers == 0 ? 0 : (double) refusedUnpayable / customers;
+    }
+
+    /**
+     * Customers per second of wall time that the real service logic handled during the run, sold or refused.
+     */
+    public double getAchievableCustomersPerSecond() {
+        return wallNanos == 0 ? 0 : customers * 1e9 / wallNanos;
+    }
+
+    public void print(PrintStream out, SimulationConfig config) {
+        out.printf("Simulated %d machines for %d days (seed %d) in %.1f s%n",
+                config.getMachines(), config.getDays(), config.getSeed(), wallNanos / 1e9);
+        out.printf("  customers            %,d%n", customers);
+        out.printf("  sales                %,d (%.2f revenue)%n", sales, revenue / 100.0);
+        out.printf("  refused, no change   %,d (%.2f%%)%n", refusedNoChange, 100 * getRefusedNoChangeRate());
+        out.printf("  refused, sold out    %,d (%.2f%%)%n", refusedSoldOut, 100 * getRefusedSoldOutRate());
+        out.printf("  refused, unpayable   %,d (%.2f%%)%n", refusedUnpayable, 100 * getRefusedUnpayableRate());
+        if (secondsUntilDry.isEmpty()) {
+            out.printf("  change ran dry       never in %,d service intervals%n", serviceIntervals);
+        } else {
+            out.printf("  change ran dry       in %.1f%% of %,d service intervals, after %s median, %s p10%n",
+                    100.0 * secondsUntilDry.size() / serviceIntervals, serviceIntervals,
+                    format(percentile(0.5)), format(percentile(0.1)));
+        }
+        out.printf("  peak fleet demand    %.1f purchases/s (busiest minute)%n", peakSalesPerMinute / 60.0);
+        out.printf("  achievable           %,.0f customers/s on %d threads%n", getAchievableCustomersPerSecond(), config.getThreads());
+        out.printf("  %-14s %12s %12s %8s%n", "product", "sold", "refused", "price");
+        for (ItemEnum item : ItemEnum.values()) {
+            out.printf("  %-14s %,12d %,12d %8.2f%n", item.getName(), salesByProduct[item.ordinal()],
+                    refusedByProduct[item.ordinal()], config.getPrices().get(item) / 100.0);
+        }
+    }
+
+    enum Refusal {
+        NO_CHANGE, SOLD_OUT, UNPAYABLE
+    }
+
+    private long percentile(double quantile) {
+        return secondsUntilDry.get((int) Math.min(secondsUntilDry.size() - 1, Math.floor(quantile * secondsUntilDry.size())));
+    }
+
+    private static String format(long seconds) {
+        Duration duration = Duration.ofSeconds(seconds);
+        return String.format("%dd %02dh", duration.toDays(), duration.toHoursPart());
+    }
+}
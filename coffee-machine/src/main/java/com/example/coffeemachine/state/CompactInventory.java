@@ -0,0 +1,305 @@
+package com.example.coffeemachine.state;
+
+import com.example.coffeemachine.entity.Product;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stock of one machine kept in primitive columns sorted by product id: ids, row versions, interned name codes,
+ * prices and quantities, optionally in off-heap buffers. A product costs 28 bytes instead of a map entry, a
+ * {@link Product} and its boxed fields.
+ * <p>
+ * Lookups and quantity changes run concurrently under the read lock, and decrements are lock-free CAS on the
+ * quantity slot. Adding or removing a product shifts the columns and takes the write lock.
+ */
+public final class CompactInventory {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final ProductNameDictionary names;
+    private final boolean offHeap;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock read = lock.readLock();
+    private final Lock write = lock.writeLock();
+
+    private LongColumn ids;
+    private LongColumn versions;
+    private IntColumn nameCodes;
+    private IntColumn prices;
+    private IntColumn quantities;
+    private int size;
+
+    public CompactInventory(ProductNameDictionary names, boolean offHeap) {
+        this.names = names;
+        this.offHeap = offHeap;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds the product or replaces its name, price, quantity and row version.
+     */
+    public void put(Product product) {
+        put(product, false);
+    }
+
+    /**
+     * Like {@link #put}, but ignores a row whose version is not newer than the one the machine holds, e.g. a row
+     * read before a purchase that has committed since.
+     *
+     * @return false when the row was ignored
+     */
+    public boolean putIfNewer(Product product) {
+        return put(product, true);
+    }
+
+    private boolean put(Product product, boolean newerOnly) {
+        long id = product.getId();
+        long version = product.getVersion() == null ? 0 : product.getVersion();
+        int nameCode = names.intern(product.getProductName());
+        int price = product.getProductPrice() == null ? 0 : product.getProductPrice();
+        write.lock();
+        try {
+            int index = indexOf(id);
+            if (index < 0) {
+                index = -index - 1;
+                if (size == nameCodes.capacity()) {
+                    grow();
+                }
+                ids.copy(index, ids, index + 1, size - index);
+                versions.copy(index, versions, index + 1, size - index);
+                nameCodes.copy(index, nameCodes, index + 1, size - index);
+                prices.copy(index, prices, index + 1, size - index);
+                quantities.copy(index, quantities, index + 1, size - index);
+                ids.set(index, id);
+                size++;
+            } else if (newerOnly && versions.get(index) >= version) {
+                return false;
+            }
+            versions.set(index, version);
+            nameCodes.set(index, nameCode);
+            prices.set(index, price);
+            quantities.set(index, product.getQuantity());
+            return true;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    public boolean remove(long productId) {
+        write.lock();
+        try {
+            int index = indexOf(productId);
+            if (index < 0) {
+                return false;
+            }
+            int tail = size - index - 1;
+            ids.copy(index + 1, ids, index, tail);
+            versions.copy(index + 1, versions, index, tail);
+            nameCodes.copy(index + 1, nameCodes, index, tail);
+            prices.copy(index + 1, prices, index, tail);
+            quantities.copy(index + 1, quantities, index, tail);
+            size--;
+            return true;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Returns the quantity of the product, or -1 when the machine does not stock it.
+     */
+    public int quantity(long productId) {
+        read.lock();
+        try {
+            int index = indexOf(productId);
+            return index < 0 ? -1 : quantities.get(index);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Returns the version of the product row the machine holds, or -1 when it does not stock it.
+     */
+    public long version(long productId) {
+        read.lock();
+        try {
+            int index = indexOf(productId);
+            return index < 0 ? -1 : versions.get(index);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Returns the price of the product, or -1 when the machine does not stock it.
+     */
+    public int price(long productId) {
+        read.lock();
+        try {
+            int index = indexOf(productId);
+            return index < 0 ? -1 : prices.get(index);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Returns the name of the product, or null when the machine does not stock it or it has no name.
+     */
+    public String name(long productId) {
+        read.lock();
+        try {
+            int index = indexOf(productId);
+            return index < 0 ? null : names.name(nameCodes.get(index));
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Returns the id of the product with this name, or -1.
+     */
+    public long idOf(String productName) {
+        int code = names.codeOf(productName);
+        if (code < 0) {
+            return -1;
+        }
+        read.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (nameCodes.get(i) == code) {
+                    return ids.get(i);
+                }
+            }
+            return -1;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Takes one unit out of stock.
+     *
+     * @return false when the product is unknown or sold out
+     */
+    public boolean decrement(long productId) {
+        read.lock();
+        try {
+            int index = indexOf(productId);
+            if (index < 0) {
+                return false;
+            }
+            int quantity;
+            do {
+                quantity = quantities.get(index);
+                if (quantity <= 0) {
+                    return false;
+                }
+            } while (!quantities.compareAndSet(index, quantity, quantity - 1));
+            return true;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    public boolean setQuantity(long productId, int quantity) {
+        read.lock();
+        try {
+            int index = indexOf(productId);
+            if (index >= 0) {
+                quantities.set(index, quantity);
+            }
+            return index >= 0;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    public int size() {
+        read.lock();
+        try {
+            return size;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Bytes held by the columns, on or off the heap, not counting the shared name dictionary.
+     */
+    public long footprintBytes() {
+        read.lock();
+        try {
+            return (long) nameCodes.capacity() * (2 * Long.BYTES + 3 * Integer.BYTES);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Materializes the stock as products keyed by name, for display and the REST API.
+     */
+    public Map<String, Product> toProducts() {
+        read.lock();
+        try {
+            Map<String, Product> products = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                Product product = new Product();
+                product.setId(ids.get(i));
+                product.setProductName(names.name(nameCodes.get(i)));
+                product.setProductPrice(prices.get(i));
+                product.setQuantity(quantities.get(i));
+                products.put(product.getProductName(), product);
+            }
+            return products;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    private int indexOf(long productId) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long id = ids.get(mid);
+            if (id < productId) {
+                low = mid + 1;
+            } else if (id > productId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void grow() {
+        LongColumn oldIds = ids;
+        LongColumn oldVersions = versions;
+        IntColumn oldNameCodes = nameCodes;
+        IntColumn oldPrices = prices;
+        IntColumn oldQuantities = quantities;
+        allocate(size + (size >> 1) + 1);
+        oldIds.copy(0, ids, 0, size);
+        oldVersions.copy(0, versions, 0, size);
+        oldNameCodes.copy(0, nameCodes, 0, size);
+        oldPrices.copy(0, prices, 0, size);
+        oldQuantities.copy(0, quantities, 0, size);
+    }
+
+    private void allocate(int capacity) {
+        ids = LongColumn.allocate(capacity, offHeap);
+        versions = LongColumn.allocate(capacity, offHeap);
+        nameCodes = IntColumn.allocate(capacity, offHeap);
+        prices = IntColumn.allocate(capacity, offHeap);
+        quantities = IntColumn.allocate(capacity, offHeap);
+    }
+}
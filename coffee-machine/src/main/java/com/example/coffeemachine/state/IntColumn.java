@@ -0,0 +1,69 @@
+package com.example.coffeemachine.state;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-capacity int array, either on the heap or in a direct buffer, with volatile access and CAS.
+ */
+final class IntColumn {
+    private static final VarHandle ARRAY = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle BUFFER = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final int[] array;
+    private final ByteBuffer buffer;
+
+    private IntColumn(int[] array, ByteBuffer buffer) {
+        this.array = array;
+        this.buffer = buffer;
+    }
+
+    static IntColumn allocate(int capacity, boolean offHeap) {
+        return offHeap
+                ? new IntColumn(null, ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()))
+                : new IntColumn(new int[capacity], null);
+    }
+
+    int get(int index) {
+        return array != null ? (int) ARRAY.getVolatile(array, index) : (int) BUFFER.getVolatile(buffer, index * Integer.BYTES);
+    }
+
+    void set(int index, int value) {
+        if (array != null) {
+            ARRAY.setVolatile(array, index, value);
+        } else {
+            BUFFER.setVolatile(buffer, index * Integer.BYTES, value);
+        }
+    }
+
+    boolean compareAndSet(int index, int expected, int value) {
+        return array != null
+                ? ARRAY.compareAndSet(array, index, expected, value)
+                : BUFFER.compareAndSet(buffer, index * Integer.BYTES, expected, value);
+    }
+
+    int capacity() {
+        return array != null ? array.length : buffer.capacity() / Integer.BYTES;
+    }
+
+    boolean isOffHeap() {
+        return buffer != null;
+    }
+
+    /**
+     * Moves {@code length} values from {@code from} to {@code to} within this column, or into {@code target}.
+     */
+    void copy(int from, IntColumn target, int to, int length) {
+        if (from < to && target == this) {
+            for (int i = length - 1; i >= 0; i--) {
+                target.set(to + i, get(from + i));
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                target.set(to + i, get(from + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.coffeemachine.state;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "vending.inventory")
+public class InventoryProperties {
+    /** Keep inventory columns in direct buffers instead of heap arrays. */
+    private boolean offHeap = false;
+}
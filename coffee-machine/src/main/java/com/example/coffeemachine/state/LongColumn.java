@@ -0,0 +1,52 @@
+package com.example.coffeemachine.state;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-capacity long array, either on the heap or in a direct buffer, with volatile access.
+ */
+final class LongColumn {
+    private static final VarHandle ARRAY = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle BUFFER = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final long[] array;
+    private final ByteBuffer buffer;
+
+    private LongColumn(long[] array, ByteBuffer buffer) {
+        this.array = array;
+        this.buffer = buffer;
+    }
+
+    static LongColumn allocate(int capacity, boolean offHeap) {
+        return offHeap
+                ? new LongColumn(null, ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()))
+                : new LongColumn(new long[capacity], null);
+    }
+
+    long get(int index) {
+        return array != null ? (long) ARRAY.getVolatile(array, index) : (long) BUFFER.getVolatile(buffer, index * Long.BYTES);
+    }
+
+    void set(int index, long value) {
+        if (array != null) {
+            ARRAY.setVolatile(array, index, value);
+        } else {
+            BUFFER.setVolatile(buffer, index * Long.BYTES, value);
+        }
+    }
+
+    void copy(int from, LongColumn target, int to, int length) {
+        if (from < to && target == this) {
+            for (int i = length - 1; i >= 0; i--) {
+                target.set(to + i, get(from + i));
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                target.set(to + i, get(from + i));
+            }
+        }
+    }
+}
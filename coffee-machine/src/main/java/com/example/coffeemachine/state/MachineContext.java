@@ -0,0 +1,38 @@
+package com.example.coffeemachine.state;
+
+import java.util.function.Supplier;
+
+/**
+ * Identifies the machine the current thread is working for. Requests without a machine id
+ * act on the {@link #DEFAULT_MACHINE_ID default} machine, which is how a single-machine deployment runs.
+ */
+public final class MachineContext {
+    public static final String DEFAULT_MACHINE_ID = "default";
+
+    private static final ThreadLocal<String> MACHINE_ID = ThreadLocal.withInitial(() -> DEFAULT_MACHINE_ID);
+
+    private MachineContext() {
+    }
+
+    public static String currentMachineId() {
+        return MACHINE_ID.get();
+    }
+
+    public static void setMachineId(String machineId) {
+        MACHINE_ID.set(machineId == null || machineId.isBlank() ? DEFAULT_MACHINE_ID : machineId);
+    }
+
+    public static void clear() {
+        MACHINE_ID.remove();
+    }
+
+    public static <T> T callFor(String machineId, Supplier<T> action) {
+        String previous = MACHINE_ID.get();
+        setMachineId(machineId);
+        try {
+            return action.get();
+        } finally {
+            MACHINE_ID.set(previous);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.coffeemachine.state;
+
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.InsufficientAmountException;
+import com.example.coffeemachine.exception.NotEnoughChangeException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, versioned view of the machine's coins. A new instance is published on every write,
+ * so readers can serialize it without holding any lock. Stock lives in the machine's {@link CompactInventory}.
+ */
+public record MachineSnapshot(long version,
+                              List<CoinEnum> insertedCoins,
+                              Map<CoinEnum, Integer> availableChange) {
+
+    public MachineSnapshot {
+        insertedCoins = List.copyOf(insertedCoins);
+        Map<CoinEnum, Integer> change = new EnumMap<>(CoinEnum.class);
+        change.putAll(availableChange);
+        availableChange = Collections.unmodifiableMap(change);
+    }
+
+    public static MachineSnapshot initial(Map<CoinEnum, Integer> availableChange) {
+        return new MachineSnapshot(0, List.of(), availableChange);
+    }
+
+    public int getTotalInserted() {
+        return insertedCoins.stream()
+                .mapToInt(CoinEnum::getDenomination)
+                .sum();
+    }
+
+    public double getCurrentBalance() {
+        return availableChange.entrySet().stream()
+                .mapToInt(e -> e.getKey().getDenomination() * e.getValue())
+                .sum() / 100.0;
+    }
+
+    public MachineSnapshot withInsertedCoins(List<CoinEnum> insertedCoins) {
+        return new MachineSnapshot(version + 1, insertedCoins, availableChange);
+    }
+
+    public MachineSnapshot withAvailableChange(Map<CoinEnum, Integer> availableChange) {
+        return new MachineSnapshot(version + 1, insertedCoins, availableChange);
+    }
+
+    public MachineSnapshot afterPurchase(Map<CoinEnum, Integer> availableChange) {
+        return new MachineSnapshot(version + 1, List.of(), availableChange);
+    }
+
+    /**
+     * Pays for a product with every inserted coin and returns the state after the sale.
+     * {@code changeCoins} receives the coins to hand back.
+     */
+    public MachineSnapshot settle(int productPrice, Map<CoinEnum, Integer> changeCoins) {
+        int totalInserted = getTotalInserted();
+        if (totalInserted < productPrice) {
+            throw new InsufficientAmountException(totalInserted, productPrice);
+        }
+        Map<CoinEnum, Integer> change = new EnumMap<>(CoinEnum.class);
+        change.putAll(availableChange);
+        Map<CoinEnum, Integer> coins = calculateChange(totalInserted - productPrice, change);
+        changeCoins.clear();
+        changeCoins.putAll(coins);
+        return afterPurchase(change);
+    }
+
+    /**
+     * Reverses a {@link #settle} on top of the current state: the paid coins count as inserted again and the
+     * change goes back into the float.
+     */
+    public MachineSnapshot cancelSale(List<CoinEnum> paidCoins, Map<CoinEnum, Integer> changeCoins) {
+        List<CoinEnum> coins = new ArrayList<>(paidCoins);
+        coins.addAll(insertedCoins);
+        Map<CoinEnum, Integer> change = new EnumMap<>(CoinEnum.class);
+        change.putAll(availableChange);
+        changeCoins.forEach((coin, count) -> change.merge(coin, count, Integer::sum));
+        return new MachineSnapshot(version + 1, coins, change);
+    }
+
+    private static Map<CoinEnum, Integer> calculateChange(int changeInStotinki, Map<CoinEnum, Integer> availableChange) {
+        Map<CoinEnum, Integer> changeCoins = new HashMap<>();
+        CoinEnum[] coins = CoinEnum.values();
+
+        for (int i = coins.length - 1; i >= 0 && changeInStotinki > 0; i--) {
+            CoinEnum coin = coins[i];
+            int coinValue = coin.getDenomination();
+            int available = availableChange.getOrDefault(coin, 0);
+
+            while (changeInStotinki >= coinValue && available > 0) {
+                changeInStotinki -= coinValue;
+                available--;
+                changeCoins.merge(coin, 1, Integer::sum);
+            }
+
+            availableChange.put(coin, available);
+        }
+        if (changeInStotinki > 0) {
+            throw new NotEnoughChangeException();
+        }
+        return changeCoins;
+    }
+}
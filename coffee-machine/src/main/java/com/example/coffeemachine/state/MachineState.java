@@ -2,39 +2,201 @@ package com.example.coffeemachine.state;
 
 import com.example.coffeemachine.entity.Product;
 import com.example.coffeemachine.enums.CoinEnum;
-import lombok.Data;
+import com.example.coffeemachine.exception.MachineHandoffException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
-@Data
+/**
+ * Holds the state of every machine served by this node as a copy-on-write {@link MachineSnapshot}.
+ * Readers take the current snapshot without locking; writers of one machine are serialized and
+ * publish a new snapshot with a single volatile write. Stock is kept next to it in a {@link CompactInventory},
+ * all of which share one {@link ProductNameDictionary}. Methods without a machine id act on
+ * {@link MachineContext#currentMachineId()}.
+ */
 @Component
 @Slf4j
 public class MachineState {
-    private Map<String, Product> inventory = new HashMap<>();
-    private List<CoinEnum> insertedCoins = new ArrayList<>();
-    private Map<CoinEnum, Integer> availableChange = new EnumMap<>(CoinEnum.class);
+    private final ConcurrentMap<String, Slot> machines = new ConcurrentHashMap<>();
+    private final ProductNameDictionary productNames = new ProductNameDictionary();
+    private final InventoryProperties inventoryProperties;
 
-    public MachineState() {
+    public MachineState(InventoryProperties inventoryProperties) {
+        this.inventoryProperties = inventoryProperties;
         initializeCoinInventory();
 //        initializeProductInventory();
     }
 
+    public MachineSnapshot snapshot() {
+        return snapshot(MachineContext.currentMachineId());
+    }
+
+    public MachineSnapshot snapshot(String machineId) {
+        return slot(machineId).snapshot;
+    }
+
+    public MachineSnapshot update(UnaryOperator<MachineSnapshot> change) {
+        return update(MachineContext.currentMachineId(), change);
+    }
+
+    public MachineSnapshot update(String machineId, UnaryOperator<MachineSnapshot> change) {
+        Slot slot = slot(machineId);
+        slot.lock.lock();
+        try {
+            if (slot.fenced) {
+                throw new MachineHandoffException(machineId);
+            }
+            MachineSnapshot next = change.apply(slot.snapshot);
+            slot.snapshot = next;
+            return next;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    public void updateOnCommit(UnaryOperator<MachineSnapshot> change) {
+        updateOnCommit(MachineContext.currentMachineId(), change);
+    }
+
+    /**
+     * Like {@link #update}, but inside a transaction the change is applied only after it commits, to the
+     * snapshot current at that point. For changes that cannot fail, e.g. setting coin levels.
+     */
+    public void updateOnCommit(String machineId, UnaryOperator<MachineSnapshot> change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update(machineId, change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    update(machineId, change);
+                } catch (MachineHandoffException ex) {
+                    log.warn("Machine {} was handed off before a committed change reached it", machineId);
+                }
+            }
+        });
+    }
+
+    public PendingUpdate updatePending(UnaryOperator<MachineSnapshot> change, UnaryOperator<MachineSnapshot> undo) {
+        return updatePending(MachineContext.currentMachineId(), change, undo);
+    }
+
+    /**
+     * Publishes the change at once, like {@link #update}, and inside a transaction applies {@code undo} to the
+     * then current snapshot if the transaction rolls back. The machine is locked only while one of them runs,
+     * never across the commit, so other writers of the machine do not wait for the database. {@code undo} has
+     * to reverse the change on top of what other writers did in between, e.g. give back the coins a sale took.
+     */
+    public PendingUpdate updatePending(String machineId, UnaryOperator<MachineSnapshot> change, UnaryOperator<MachineSnapshot> undo) {
+        MachineSnapshot next = update(machineId, change);
+        PendingUpdate pending = new PendingUpdate(machineId, slot(machineId), next, undo);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        pending.revert();
+                    }
+                }
+            });
+        }
+        return pending;
+    }
+
+    public CompactInventory inventory() {
+        return inventory(MachineContext.currentMachineId());
+    }
+
+    public CompactInventory inventory(String machineId) {
+        return slot(machineId).inventory;
+    }
+
+    public boolean isLoaded(String machineId) {
+        Slot slot = machines.get(machineId);
+        return slot != null && !slot.fenced;
+    }
+
+    public Set<String> getLoadedMachineIds() {
+        return machines.entrySet().stream()
+                .filter(entry -> !entry.getValue().fenced)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Replaces the machine's coin state with one taken over from another node.
+     *
+     * @param checkpointedAt when the snapshot was written to the database, or null when it was not read from there
+     */
+    public void restore(String machineId, MachineSnapshot snapshot, Instant checkpointedAt) {
+        machines.compute(machineId, (id, slot) -> new Slot(snapshot, slot != null ? slot.inventory : newInventory(), checkpointedAt));
+    }
+
+    /**
+     * Returns when the checkpoint the machine was restored from was written, or null when it was not restored.
+     * Coin rows written before then are already part of its state.
+     */
+    public Instant checkpointedAt(String machineId) {
+        Slot slot = machines.get(machineId);
+        return slot == null ? null : slot.checkpointedAt;
+    }
+
+    /**
+     * Rejects every later write to the machine with {@link MachineHandoffException} and returns its final
+     * snapshot, or null when the machine is not loaded. The fenced slot stays in place, so a request that is
+     * still running cannot recreate the machine with default state; {@link #restore} replaces it.
+     */
+    public MachineSnapshot fence(String machineId) {
+        Slot slot = machines.get(machineId);
+        if (slot == null) {
+            return null;
+        }
+        slot.lock.lock();
+        try {
+            slot.fenced = true;
+            return slot.snapshot;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    public MachineSnapshot evict(String machineId) {
+        Slot slot = machines.remove(machineId);
+        return slot == null ? null : slot.snapshot;
+    }
+
     public void addProduct(Product product) {
-        inventory.put(product.getProductName(), product);
+        inventory().put(product);
+    }
+
+    public void removeProduct(Long productId) {
+        inventory().remove(productId);
     }
 
     public boolean hasProduct(String name) {
-        return inventory.containsKey(name) && inventory.get(name).getQuantity() > 0;
+        CompactInventory inventory = inventory();
+        long id = inventory.idOf(name);
+        return id >= 0 && inventory.quantity(id) > 0;
     }
 
     public Map<String, Product> getInventory() {
-        return inventory;
+        return inventory().toProducts();
     }
 
 //    public void removeProduct(String name) {
@@ -45,36 +207,35 @@ public class MachineState {
 //    }
 
     public void addInsertedCoin(CoinEnum coin) {
-        insertedCoins.add(coin);
+        update(s -> {
+            List<CoinEnum> insertedCoins = new ArrayList<>(s.insertedCoins());
+            insertedCoins.add(coin);
+            return s.withInsertedCoins(insertedCoins);
+        });
     }
 
     public List<CoinEnum> getInsertedCoins() {
-        return insertedCoins;
+        return snapshot().insertedCoins();
     }
 
     public void clearInsertedCoins() {
-        insertedCoins.clear();
+        update(s -> s.withInsertedCoins(List.of()));
     }
 
     public Map<CoinEnum, Integer> getAvailableChange() {
-        return availableChange;
+        return snapshot().availableChange();
     }
 
     public void setAvailableChange(Map<CoinEnum, Integer> change) {
-        this.availableChange = new EnumMap<>(change);
+        update(s -> s.withAvailableChange(change));
     }
 
     public double getCurrentBalance() {
-        return availableChange.entrySet().stream()
-                .mapToInt(e -> e.getKey().getDenomination() * e.getValue())
-                .sum() / 100.0;
+        return snapshot().getCurrentBalance();
     }
 
     public void resetChange() {
-        availableChange.clear();
-        for (CoinEnum coin : CoinEnum.values()) {
-            availableChange.put(coin, 10);
-        }
+        setAvailableChange(defaultChange());
     }
 //
 //    private void initializeProductInventory() {
@@ -85,9 +246,81 @@ public class MachineState {
 //    }
 
     private void initializeCoinInventory() {
+        slot(MachineContext.DEFAULT_MACHINE_ID);
+        log.info("Coin inventory has been initialized");
+    }
+
+    private Slot slot(String machineId) {
+        return machines.computeIfAbsent(machineId, id -> new Slot(MachineSnapshot.initial(defaultChange()), newInventory()));
+    }
+
+    private CompactInventory newInventory() {
+        return new CompactInventory(productNames, inventoryProperties.isOffHeap());
+    }
+
+    private static Map<CoinEnum, Integer> defaultChange() {
+        Map<CoinEnum, Integer> change = new EnumMap<>(CoinEnum.class);
         for (CoinEnum coin : CoinEnum.values()) {
-            availableChange.put(coin, 10);
+            change.put(coin, 10);
+        }
+        return change;
+    }
+
+    /**
+     * A change published by {@link #updatePending} that can still be reverted.
+     */
+    public static final class PendingUpdate {
+        private final String machineId;
+        private final Slot slot;
+        private final MachineSnapshot snapshot;
+        private final UnaryOperator<MachineSnapshot> undo;
+        private final AtomicBoolean reverted = new AtomicBoolean();
+
+        private PendingUpdate(String machineId, Slot slot, MachineSnapshot snapshot, UnaryOperator<MachineSnapshot> undo) {
+            this.machineId = machineId;
+            this.slot = slot;
+            this.snapshot = snapshot;
+            this.undo = undo;
+        }
+
+        public MachineSnapshot snapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Applies the undo once; later calls, e.g. from the rollback after an explicit revert, do nothing.
+         */
+        public void revert() {
+            if (!reverted.compareAndSet(false, true)) {
+                return;
+            }
+            slot.lock.lock();
+            try {
+                if (slot.fenced) {
+                    log.warn("Machine {} was handed off with a change that has since been reverted", machineId);
+                }
+                slot.snapshot = undo.apply(slot.snapshot);
+            } finally {
+                slot.lock.unlock();
+            }
+        }
+    }
+
+    private static final class Slot {
+        private final CompactInventory inventory;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Instant checkpointedAt;
+        private volatile MachineSnapshot snapshot;
+        private volatile boolean fenced;
+
+        private Slot(MachineSnapshot snapshot, CompactInventory inventory) {
+            this(snapshot, inventory, null);
+        }
+
+        private Slot(MachineSnapshot snapshot, CompactInventory inventory, Instant checkpointedAt) {
+            this.snapshot = snapshot;
+            this.inventory = inventory;
+            this.checkpointedAt = checkpointedAt;
         }
-        log.info("Coin inventory has been initialized");
     }
 }
@@ -0,0 +1,55 @@
+package com.example.coffeemachine.state;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns product names once for the whole node, so inventories of many machines store an int code per
+ * product instead of a reference to their own copy of the name. A product without a name gets {@link #NO_NAME}.
+ */
+public final class ProductNameDictionary {
+    public static final int NO_NAME = -1;
+
+    private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    public int intern(String name) {
+        if (name == null) {
+            return NO_NAME;
+        }
+        Integer code = codes.get(name);
+        return code != null ? code : add(name);
+    }
+
+    /**
+     * Returns the code of an already interned name, or -1.
+     */
+    public int codeOf(String name) {
+        return name == null ? -1 : codes.getOrDefault(name, -1);
+    }
+
+    public String name(int code) {
+        return code == NO_NAME ? null : names[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    private synchronized int add(String name) {
+        Integer existing = codes.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        String[] table = names;
+        if (size == table.length) {
+            table = Arrays.copyOf(table, size * 2);
+        }
+        table[size] = name;
+        names = table;
+        codes.put(name, size);
+        return size++;
+    }
+}
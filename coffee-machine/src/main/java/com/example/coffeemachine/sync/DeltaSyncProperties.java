@@ -0,0 +1,19 @@
+package com.example.coffeemachine.sync;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "vending.sync")
+public class DeltaSyncProperties {
+    private boolean enabled = false;
+    private Duration interval = Duration.ofSeconds(5);
+    /**
+     * How far behind the watermark every pass reads again. A transaction stamps its rows when it writes them
+     * but they only become visible on commit, so this must exceed the longest write transaction.
+     */
+    private Duration overlap = Duration.ofSeconds(10);
+    private int batchSize = 500;
+}
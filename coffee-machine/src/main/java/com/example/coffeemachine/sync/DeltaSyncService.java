@@ -0,0 +1,269 @@
+package com.example.coffeemachine.sync;
+
+import com.example.coffeemachine.datasource.ReadConsistency;
+import com.example.coffeemachine.entity.Coin;
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.MachineHandoffException;
+import com.example.coffeemachine.repository.CoinRepository;
+import com.example.coffeemachine.repository.ProductRepository;
+import com.example.coffeemachine.state.CompactInventory;
+import com.example.coffeemachine.state.MachineState;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Pulls the {@code products} and {@code coins} rows written since the last pass into {@link MachineState},
+ * so writes made by other nodes or straight in SQL reach the in-memory state without reloading the tables.
+ * <p>
+ * Each pass reads the rows whose {@code updated_at} is past the watermark minus {@code overlap}, through the
+ * {@code updated_at} index, and skips the versions it has already applied. Its cost follows the write rate,
+ * not the catalog size. All machines sell from the one catalog, so a product row is written into every loaded
+ * machine, and a row a machine did not hold yet counts as an insert. A row whose version is not newer than the
+ * machine's is dropped: a purchase that committed after the row was read has already stored a later one. A machine the sync has not seen before,
+ * e.g. one just taken over from another node, gets the whole catalog once. Coin rows hold the float that
+ * service visits recorded for one machine and refresh that machine when it is loaded, unless the machine was
+ * restored from a session checkpoint written after them. Every value that
+ * differed from memory is reported as a {@link StateDivergence}.
+ * <p>
+ * Deleted rows leave no trace to pull. A purchase of a deleted product drops it from the machine instead.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "vending.sync", name = "enabled", havingValue = "true")
+public class DeltaSyncService {
+    private static final int REPORTED_DIVERGENCES = 100;
+
+    private final DeltaSyncProperties properties;
+    private final ProductRepository productRepository;
+    private final CoinRepository coinRepository;
+    private final MachineState machineState;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+    private final Map<Long, Seen> seenProducts = new HashMap<>();
+    private final Map<Long, Seen> seenCoins = new HashMap<>();
+    private final Set<String> syncedMachines = new HashSet<>();
+    private final Deque<StateDivergence> divergences = new ConcurrentLinkedDeque<>();
+
+    private volatile Instant productWatermark = Instant.EPOCH;
+    private volatile Instant coinWatermark = Instant.EPOCH;
+
+    public DeltaSyncService(DeltaSyncProperties properties, ProductRepository productRepository, CoinRepository coinRepository,
+                            MachineState machineState, TaskScheduler taskScheduler, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.productRepository = productRepository;
+        this.coinRepository = coinRepository;
+        this.machineState = machineState;
+        this.taskScheduler = taskScheduler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskScheduler.scheduleWithFixedDelay(this::syncQuietly, Instant.now().plus(properties.getInterval()), properties.getInterval());
+    }
+
+    /**
+     * Runs one pass and returns the number of changed rows it applied.
+     */
+    public synchronized int sync() {
+        return ReadConsistency.onPrimary(() -> syncProducts() + syncCoins());
+    }
+
+    public Instant getProductWatermark() {
+        return productWatermark;
+    }
+
+    public Instant getCoinWatermark() {
+        return coinWatermark;
+    }
+
+    public List<StateDivergence> getDivergences() {
+        return List.copyOf(divergences);
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (DataAccessException ex) {
+            log.warn("State sync failed, retrying in {}: {}", properties.getInterval(), ex.getMessage());
+        }
+    }
+
+    private int syncProducts() {
+        loadCatalogIntoNewMachines();
+        Instant since = productWatermark.minus(properties.getOverlap());
+        Instant cursor = since;
+        long afterId = -1;
+        int applied = 0;
+        while (true) {
+            List<Product> batch = productRepository.findChangedSince(cursor, afterId, Limit.of(properties.getBatchSize()));
+            for (Product product : batch) {
+                Seen previous = seenProducts.put(product.getId(), new Seen(product.getVersion(), product.getUpdatedAt()));
+                if (previous == null || previous.version() != product.getVersion()) {
+                    applyProduct(product);
+                    applied++;
+                }
+            }
+            count("products", batch.size());
+            if (batch.size() < properties.getBatchSize()) {
+                break;
+            }
+            Product last = batch.get(batch.size() - 1);
+            cursor = last.getUpdatedAt();
+            afterId = last.getId();
+        }
+        productWatermark = advance(productWatermark, seenProducts);
+        return applied;
+    }
+
+    private int syncCoins() {
+        Instant since = coinWatermark.minus(properties.getOverlap());
+        List<Coin> changed = new ArrayList<>();
+        for (Coin coin : coinRepository.findByUpdatedAtGreaterThanEqual(since)) {
+            Seen previous = seenCoins.put(coin.getId(), new Seen(coin.getVersion(), coin.getUpdatedAt()));
+            if (previous == null || previous.version() != coin.getVersion()) {
+                changed.add(coin);
+            }
+        }
+        count("coins", changed.size());
+        Map<String, List<Coin>> byMachine = new LinkedHashMap<>();
+        changed.forEach(coin -> byMachine.computeIfAbsent(coin.getMachineId(), id -> new ArrayList<>()).add(coin));
+        byMachine.forEach(this::applyCoins);
+        coinWatermark = advance(coinWatermark, seenCoins);
+        return changed.size();
+    }
+
+    /**
+     * Fills machines loaded since the last pass with the whole catalog. The delta passes only carry recent
+     * writes, so a machine that starts out empty would otherwise never see the products nobody touched.
+     */
+    private void loadCatalogIntoNewMachines() {
+        Set<String> loaded = machineState.getLoadedMachineIds();
+        syncedMachines.retainAll(loaded);
+        List<String> fresh = loaded.stream().filter(id -> !syncedMachines.contains(id)).toList();
+        if (fresh.isEmpty()) {
+            return;
+        }
+        List<Product> catalog = productRepository.findAll();
+        for (String machineId : fresh) {
+            CompactInventory inventory = machineState.inventory(machineId);
+            int inserted = 0;
+            for (Product product : catalog) {
+                if (inventory.quantity(product.getId()) < 0 && inventory.putIfNewer(product)) {
+                    inserted++;
+                }
+            }
+            inserted(inserted);
+            syncedMachines.add(machineId);
+        }
+    }
+
+    private void applyProduct(Product product) {
+        int productPrice = product.getProductPrice() == null ? 0 : product.getProductPrice();
+        for (String machineId : machineState.getLoadedMachineIds()) {
+            CompactInventory inventory = machineState.inventory(machineId);
+            int quantity = inventory.quantity(product.getId());
+            int price = inventory.price(product.getId());
+            boolean renamed = !Objects.equals(inventory.name(product.getId()), product.getProductName());
+            if (!inventory.putIfNewer(product)) {
+                continue;
+            }
+            if (quantity < 0) {
+                inserted(1);
+            } else if (quantity != product.getQuantity() || price != productPrice || renamed) {
+                diverged(machineId, "products", String.valueOf(product.getId()),
+                        "quantity=" + quantity + ", price=" + price,
+                        "quantity=" + product.getQuantity() + ", price=" + productPrice + ", name=" + product.getProductName());
+            }
+        }
+    }
+
+    private void applyCoins(String machineId, List<Coin> changed) {
+        if (!machineState.isLoaded(machineId)) {
+            return;
+        }
+        try {
+            applyCoinsTo(machineId, changed);
+        } catch (MachineHandoffException ex) {
+            log.debug("Machine {} was handed off, its coins are the next owner's", machineId);
+        }
+    }
+
+    private void applyCoinsTo(String machineId, List<Coin> changed) {
+        Instant checkpointedAt = machineState.checkpointedAt(machineId);
+        List<Coin> newer = checkpointedAt == null ? changed : changed.stream()
+                .filter(coin -> coin.getUpdatedAt().isAfter(checkpointedAt))
+                .toList();
+        if (newer.isEmpty()) {
+            return;
+        }
+        machineState.update(machineId, snapshot -> {
+            Map<CoinEnum, Integer> availableChange = new EnumMap<>(CoinEnum.class);
+            availableChange.putAll(snapshot.availableChange());
+            for (Coin coin : newer) {
+                Integer inMemory = availableChange.put(coin.getCoin(), coin.getQuantity());
+                if (!coin.getQuantity().equals(inMemory)) {
+                    diverged(machineId, "coins", coin.getCoin().name(), String.valueOf(inMemory), String.valueOf(coin.getQuantity()));
+                }
+            }
+            return snapshot.withAvailableChange(availableChange);
+        });
+    }
+
+    private void diverged(String machineId, String table, String key, String inMemory, String database) {
+        log.warn("Machine {} held {} {} as {}, database has {}", machineId, table, key, inMemory, database);
+        meterRegistry.counter("vending.sync.divergences", "table", table).increment();
+        divergences.addFirst(new StateDivergence(machineId, table, key, inMemory, database, Instant.now()));
+        while (divergences.size() > REPORTED_DIVERGENCES) {
+            divergences.pollLast();
+        }
+    }
+
+    private void count(String table, int rows) {
+        meterRegistry.counter("vending.sync.rows", "table", table).increment(rows);
+    }
+
+    private void inserted(int products) {
+        meterRegistry.counter("vending.sync.inserts", "table", "products").increment(products);
+    }
+
+    /**
+     * Moves the watermark to the newest row seen and forgets the rows that the next pass will not read again,
+     * so the bookkeeping stays as small as the overlap window.
+     */
+    private Instant advance(Instant watermark, Map<Long, Seen> seen) {
+        Instant newest = watermark;
+        for (Seen row : seen.values()) {
+            if (row.updatedAt().isAfter(newest)) {
+                newest = row.updatedAt();
+            }
+        }
+        Instant nextSince = newest.minus(properties.getOverlap());
+        seen.values().removeIf(row -> row.updatedAt().isBefore(nextSince));
+        return newest;
+    }
+
+    private record Seen(long version, Instant updatedAt) {
+    }
+}
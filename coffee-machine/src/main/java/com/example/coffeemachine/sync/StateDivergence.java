@@ -0,0 +1,11 @@
+package com.example.coffeemachine.sync;
+
+import java.time.Instant;
+
+/**
+ * A row whose database values differ from what a machine held in memory, found by the incremental sync.
+ * The in-memory copy has been replaced by the database values.
+ */
+public record StateDivergence(String machineId, String table, String key, String inMemory, String database,
+                              Instant detectedAt) {
+}
@@ -0,0 +1,49 @@
+package com.example.coffeemachine.web;
+
+import com.example.coffeemachine.command.CommandProperties;
+import com.example.coffeemachine.command.CommandTicket;
+import com.example.coffeemachine.command.MachineCommandQueue;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/vending/tickets")
+@Tag(name = "Command tickets", description = "Results of queued machine commands")
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "vending.commands", name = "enabled", havingValue = "true")
+public class CommandTicketController {
+    private final MachineCommandQueue commandQueue;
+    private final CommandProperties properties;
+
+    @GetMapping("/{ticketId}")
+    public ResponseEntity<CommandTicket.View> getTicket(@PathVariable String ticketId) {
+        return ResponseEntity.ok(commandQueue.getTicket(ticketId).view());
+    }
+
+    /**
+     * Streams a single {@code ticket} event once the command has completed or failed.
+     */
+    @GetMapping("/{ticketId}/events")
+    public SseEmitter streamTicket(@PathVariable String ticketId) {
+        CommandTicket ticket = commandQueue.getTicket(ticketId);
+        SseEmitter emitter = new SseEmitter(properties.getTicketRetention().toMillis());
+        ticket.getResult().whenComplete((result, failure) -> {
+            try {
+                emitter.send(SseEmitter.event().name("ticket").data(ticket.view()));
+                emitter.complete();
+            } catch (IOException ex) {
+                emitter.completeWithError(ex);
+            }
+        });
+        return emitter;
+    }
+}
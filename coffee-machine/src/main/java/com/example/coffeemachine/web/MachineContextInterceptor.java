@@ -0,0 +1,21 @@
+package com.example.coffeemachine.web;
+
+import com.example.coffeemachine.state.MachineContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+public class MachineContextInterceptor implements HandlerInterceptor {
+    public static final String HEADER = "X-Machine-Id";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        MachineContext.setMachineId(request.getHeader(HEADER));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        MachineContext.clear();
+    }
+}
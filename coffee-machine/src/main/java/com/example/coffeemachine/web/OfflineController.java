@@ -0,0 +1,41 @@
+package com.example.coffeemachine.web;
+
+import com.example.coffeemachine.offline.DatabaseHealthProbe;
+import com.example.coffeemachine.offline.OfflineSalesService;
+import com.example.coffeemachine.offline.SalesReconciler;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/vending/offline")
+@Tag(name = "Offline mode", description = "Sales made while the database was unavailable")
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "vending.offline", name = "enabled", havingValue = "true")
+public class OfflineController {
+    private final DatabaseHealthProbe healthProbe;
+    private final OfflineSalesService offlineSales;
+    private final SalesReconciler reconciler;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(Map.of(
+                "databaseAvailable", healthProbe.isAvailable(),
+                "pendingSales", offlineSales.getPendingSales(),
+                "conflicts", reconciler.getConflicts()));
+    }
+
+    @PostMapping("/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcile() {
+        return ResponseEntity.ok(Map.of(
+                "applied", reconciler.reconcile(),
+                "pendingSales", offlineSales.getPendingSales()));
+    }
+}
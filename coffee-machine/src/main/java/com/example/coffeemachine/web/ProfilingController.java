@@ -0,0 +1,55 @@
+package com.example.coffeemachine.web;
+
+import com.example.coffeemachine.profiling.FlightRecorderService;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/api/profiling/recording")
+@Tag(name = "Profiling", description = "Continuous JDK Flight Recorder recording")
+@RequiredArgsConstructor
+public class ProfilingController {
+    private final FlightRecorderService flightRecorderService;
+
+    @GetMapping
+    public ResponseEntity<Boolean> isRecording() {
+        return ResponseEntity.ok(flightRecorderService.isRecording());
+    }
+
+    @PostMapping
+    public ResponseEntity<Void> start() {
+        flightRecorderService.start();
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/dump")
+    public ResponseEntity<Resource> dump() {
+        Path file = flightRecorderService.dump();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(file.getFileName().toString())
+                        .build()
+                        .toString())
+                .body(new FileSystemResource(file));
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> stop() {
+        flightRecorderService.stop();
+        return ResponseEntity.ok().build();
+    }
+}
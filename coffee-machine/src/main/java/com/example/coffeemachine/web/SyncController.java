@@ -0,0 +1,37 @@
+package com.example.coffeemachine.web;
+
+import com.example.coffeemachine.sync.DeltaSyncService;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/vending/sync")
+@Tag(name = "State sync", description = "Incremental sync of the in-memory state with the database")
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "vending.sync", name = "enabled", havingValue = "true")
+public class SyncController {
+    private final DeltaSyncService deltaSync;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(Map.of(
+                "productWatermark", deltaSync.getProductWatermark(),
+                "coinWatermark", deltaSync.getCoinWatermark(),
+                "divergences", deltaSync.getDivergences()));
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> sync() {
+        return ResponseEntity.ok(Map.of(
+                "applied", deltaSync.sync(),
+                "divergences", deltaSync.getDivergences()));
+    }
+}
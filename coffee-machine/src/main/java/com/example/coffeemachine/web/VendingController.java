@@ -1,8 +1,14 @@
 package com.example.coffeemachine.web;
 
+import com.example.coffeemachine.command.CommandProperties;
+import com.example.coffeemachine.command.CommandTicket;
+import com.example.coffeemachine.command.MachineCommand;
+import com.example.coffeemachine.command.MachineCommandQueue;
+import com.example.coffeemachine.dto.ServiceVisitRequest;
 import com.example.coffeemachine.entity.Product;
 import com.example.coffeemachine.enums.CoinEnum;
 import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineSnapshot;
 import com.example.coffeemachine.state.MachineState;
 import lombok.RequiredArgsConstructor;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -10,8 +16,13 @@ import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/vending")
@@ -20,6 +31,8 @@ import java.util.Map;
 public class VendingController {
     private final VendingService vendingService;
     private final MachineState machineState;
+    private final Optional<MachineCommandQueue> commandQueue;
+    private final CommandProperties commandProperties;
 
     @PostMapping("/products")
     public ResponseEntity<Product> addProduct(@Valid @RequestBody Product product) {
@@ -37,24 +50,45 @@ public class VendingController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/service-visit")
+    public ResponseEntity<List<Product>> serviceVisit(@Valid @RequestBody ServiceVisitRequest request) {
+        return ResponseEntity.ok(vendingService.serviceVisit(request.getQuantities(), request.getCoins()));
+    }
+
     @GetMapping("/products")
     public ResponseEntity<List<Product>> getAllProducts() {
         return ResponseEntity.ok(vendingService.getAllProducts());
     }
 
+    @GetMapping("/products/{id}")
+    public ResponseEntity<Product> getProduct(@PathVariable Long id) {
+        return ResponseEntity.ok(vendingService.getProduct(id));
+    }
+
     @PostMapping("/coins")
-    public ResponseEntity<Void> insertCoin(@RequestBody CoinEnum coin) {
+    public ResponseEntity<?> insertCoin(@RequestBody CoinEnum coin,
+                                        @RequestHeader(value = "Prefer", required = false) String prefer) {
+        if (commandQueue.isPresent()) {
+            return enqueue(new MachineCommand.InsertCoin(coin), prefer);
+        }
         vendingService.insertCoin(coin);
         return ResponseEntity.ok().build();
     }
 
     @PostMapping("/coins/return")
-    public ResponseEntity<List<CoinEnum>> returnCoins() {
+    public ResponseEntity<?> returnCoins(@RequestHeader(value = "Prefer", required = false) String prefer) {
+        if (commandQueue.isPresent()) {
+            return enqueue(new MachineCommand.ReturnCoins(), prefer);
+        }
         return ResponseEntity.ok(vendingService.returnCoins());
     }
 
     @PostMapping("/products/{productId}/buy")
-    public ResponseEntity<Map<CoinEnum, Integer>> buyProduct(@PathVariable Long productId) {
+    public ResponseEntity<?> buyProduct(@PathVariable Long productId,
+                                        @RequestHeader(value = "Prefer", required = false) String prefer) {
+        if (commandQueue.isPresent()) {
+            return enqueue(new MachineCommand.BuyProduct(productId), prefer);
+        }
         return ResponseEntity.ok(vendingService.buyProduct(productId));
     }
 
@@ -63,6 +97,11 @@ public class VendingController {
         return ResponseEntity.ok(vendingService.getTotalInsertedSum());
     }
 
+    @GetMapping("/state")
+    public ResponseEntity<MachineSnapshot> getState() {
+        return ResponseEntity.ok(machineState.snapshot());
+    }
+
     @GetMapping("/state/balance")
     public ResponseEntity<Double> getCurrentBalance() {
         return ResponseEntity.ok(machineState.getCurrentBalance());
@@ -77,4 +116,29 @@ public class VendingController {
     public ResponseEntity<List<CoinEnum>> getInsertedCoins() {
         return ResponseEntity.ok(machineState.getInsertedCoins());
     }
+
+    /**
+     * Queues the command for the machine's command loop. With {@code Prefer: respond-async}, or when the
+     * command is not done within {@code vending.commands.wait-timeout}, answers 202 with the ticket.
+     */
+    private ResponseEntity<?> enqueue(MachineCommand command, String prefer) {
+        CommandTicket ticket = commandQueue.orElseThrow().submit(command);
+        if (prefer == null || !prefer.contains("respond-async")) {
+            try {
+                return ResponseEntity.ok(ticket.getResult().get(commandProperties.getWaitTimeout().toMillis(), TimeUnit.MILLISECONDS));
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException failure) {
+                    throw failure;
+                }
+                throw new IllegalStateException(ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (TimeoutException ex) {
+                // Still queued, the client continues with the ticket
+            }
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/vending/tickets/" + ticket.getId()))
+                .body(ticket.view());
+    }
 }
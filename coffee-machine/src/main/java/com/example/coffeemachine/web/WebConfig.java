@@ -0,0 +1,16 @@
+package com.example.coffeemachine.web;
+
+import com.example.coffeemachine.datasource.ReadConsistencyInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new MachineContextInterceptor()).addPathPatterns("/api/vending/**");
+        registry.addInterceptor(new ReadConsistencyInterceptor()).addPathPatterns("/api/vending/**");
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.coffeemachine.capture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureFileTest {
+
+    @Test
+    void write_ShouldRoundTripFieldsLongerThan64Kb(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("traffic.capture");
+        String longValue = "ж".repeat(40_000);
+        CapturedRequest large = new CapturedRequest(1, 2, 200, "GET", "/api/vending/products", "q=" + longValue,
+                Map.of("Prefer", longValue), "{}".getBytes(StandardCharsets.UTF_8));
+        CapturedRequest next = new CapturedRequest(3, 4, 400, "POST", "/api/vending/coins", "", Map.of(), new byte[0]);
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            CaptureFile.writeHeader(out, 0);
+            CaptureFile.write(out, large);
+            CaptureFile.write(out, next);
+        }
+
+        List<CapturedRequest> read = CaptureFile.read(path);
+        assertEquals(2, read.size());
+        assertEquals("q=" + longValue, read.get(0).query());
+        assertEquals(longValue, read.get(0).headers().get("Prefer"));
+        assertEquals("POST /api/vending/coins", read.get(1).endpoint());
+        assertEquals(400, read.get(1).status());
+    }
+}
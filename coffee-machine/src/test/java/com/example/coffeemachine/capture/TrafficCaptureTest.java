@@ -0,0 +1,125 @@
+package com.example.coffeemachine.capture;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineState;
+import com.example.coffeemachine.web.MachineContextInterceptor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "vending.capture.enabled=true")
+@ActiveProfiles("test")
+class TrafficCaptureTest {
+    private static final Path CAPTURE = createTempDirectory().resolve("traffic.capture");
+    private static final String MACHINE_ID = "capture-test";
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TrafficCaptureWriter writer;
+
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private MachineState machineState;
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void capturePath(DynamicPropertyRegistry registry) {
+        registry.add("vending.capture.path", CAPTURE::toString);
+    }
+
+    @Test
+    void capturedTraffic_ShouldReplayWithIdenticalResponses() throws Exception {
+        Product product = new Product();
+        product.setProductName(ItemEnum.TEA.getName());
+        product.setProductPrice(ItemEnum.TEA.getPrice());
+        product.setQuantity(5);
+        Long productId = vendingService.addNewProduct(product).getId();
+        machineState.evict(MACHINE_ID);
+
+        exchange(HttpMethod.POST, "/api/vending/coins", "\"TWO_LV\"");
+        exchange(HttpMethod.POST, "/api/vending/products/" + productId + "/buy", null);
+        exchange(HttpMethod.POST, "/api/vending/coins", "\"TEN_ST\"");
+        exchange(HttpMethod.GET, "/api/vending/coins/total", null);
+        exchange(HttpMethod.POST, "/api/vending/products/" + productId + "/buy", null);
+        exchange(HttpMethod.POST, "/api/vending/coins/return", null);
+        writer.close();
+
+        List<CapturedRequest> captured = CaptureFile.read(CAPTURE);
+        assertEquals(6, captured.size());
+        CapturedRequest coin = captured.get(0);
+        assertEquals("POST /api/vending/coins", coin.endpoint());
+        assertEquals("\"TWO_LV\"", new String(coin.body(), StandardCharsets.UTF_8));
+        assertEquals(MACHINE_ID, coin.headers().get(MachineContextInterceptor.HEADER));
+        assertEquals("POST /api/vending/products/{id}/buy", captured.get(1).endpoint());
+        assertEquals(400, captured.get(4).status());
+
+        TrafficReplayer replayer = new TrafficReplayer(captured, 10);
+        ReplayResult first = replayFromScratch(replayer, productId);
+        ReplayResult second = replayFromScratch(replayer, productId);
+
+        for (int i = 0; i < captured.size(); i++) {
+            assertEquals(replayer.getRequests().get(i).status(), first.status(i), "status of request " + i);
+        }
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        assertTrue(replayer.reportDifferences(first, second, out));
+        assertTrue(replayer.compare(first, second, "first", "second", Double.MAX_VALUE, out));
+        assertTrue(replayer.reportDifferences(ReplayResult.captured(captured), first, out));
+
+        ReplayResult unreachable = replayer.replay(URI.create("http://localhost:1"));
+        assertEquals(ReplayResult.NO_RESPONSE, unreachable.status(0));
+        assertFalse(replayer.reportDifferences(ReplayResult.captured(captured), unreachable, out));
+        assertFalse(replayer.reportDifferences(unreachable, unreachable, out));
+    }
+
+    private ReplayResult replayFromScratch(TrafficReplayer replayer, Long productId) {
+        machineState.evict(MACHINE_ID);
+        Product restock = new Product();
+        restock.setQuantity(5);
+        vendingService.updateProduct(productId, restock);
+        return replayer.replay(URI.create("http://localhost:" + port));
+    }
+
+    private void exchange(HttpMethod method, String path, String body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(MachineContextInterceptor.HEADER, MACHINE_ID);
+        restTemplate.exchange(path, method, new HttpEntity<>(body, headers), String.class);
+    }
+
+    private static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("traffic-capture");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.coffeemachine.capture;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficReplayerTest {
+
+    @Test
+    void hash_ShouldIgnoreGeneratedIds_ButNotOtherFields() {
+        long baseline = hash("{\"id\":12,\"productName\":\"Coffee\",\"productPrice\":120,\"timestamp\":\"2024-01-01T10:00\"}");
+
+        assertEquals(baseline, hash("{\"id\": 57,\"productName\":\"Coffee\",\"productPrice\":120,\"timestamp\":\"2024-06-30T23:59\"}"));
+        assertNotEquals(baseline, hash("{\"id\":12,\"productName\":\"Coffee\",\"productPrice\":130,\"timestamp\":\"2024-01-01T10:00\"}"));
+        assertEquals(hash("{\"message\":\"Product with ID 12 not found\"}"), hash("{\"message\":\"Product with ID 57 not found\"}"));
+        assertEquals(hash("{\"message\":\"Products with IDs [3, 4] not found\"}"), hash("{\"message\":\"Products with IDs [8] not found\"}"));
+    }
+
+    private static long hash(String body) {
+        return TrafficReplayer.hash(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
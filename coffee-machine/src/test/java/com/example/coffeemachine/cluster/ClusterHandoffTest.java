@@ -0,0 +1,234 @@
+package com.example.coffeemachine.cluster;
+
+import com.example.coffeemachine.command.CommandTicket;
+import com.example.coffeemachine.command.MachineCommand;
+import com.example.coffeemachine.command.MachineCommandQueue;
+import com.example.coffeemachine.entity.ClusterNode;
+import com.example.coffeemachine.entity.MachineSession;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.exception.MachineHandoffException;
+import com.example.coffeemachine.protocol.BinaryCommandHandler;
+import com.example.coffeemachine.protocol.BinaryFrame;
+import com.example.coffeemachine.protocol.Opcode;
+import com.example.coffeemachine.protocol.ResponseStatus;
+import com.example.coffeemachine.repository.ClusterNodeRepository;
+import com.example.coffeemachine.repository.MachineSessionRepository;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.state.MachineState;
+import com.example.coffeemachine.web.MachineContextInterceptor;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "vending.cluster.enabled=true",
+        "vending.cluster.node-id=local",
+        "vending.cluster.advertised-url=http://localhost:1",
+        "vending.commands.enabled=true"
+})
+@ActiveProfiles("test")
+class ClusterHandoffTest {
+    private static final String REMOTE_NODE = "remote";
+
+    @Autowired
+    private ClusterMembership membership;
+
+    @Autowired
+    private ClusterProperties properties;
+
+    @Autowired
+    private MachineStateHandoff handoff;
+
+    @Autowired
+    private MachineState machineState;
+
+    @Autowired
+    private MachineCommandQueue commandQueue;
+
+    @Autowired
+    private ClusterNodeRepository nodeRepository;
+
+    @Autowired
+    private MachineSessionRepository sessionRepository;
+
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private HttpServer remote;
+    private final AtomicReference<String> forwardedBy = new AtomicReference<>();
+    private final AtomicReference<String> forwardedBody = new AtomicReference<>();
+
+    /**
+     * Stands in for a second node: it answers every request itself and records what it was sent.
+     */
+    @BeforeEach
+    void startRemoteNode() throws IOException {
+        remote = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        remote.createContext("/", exchange -> {
+            forwardedBy.set(exchange.getRequestHeaders().getFirst(ClusterRoutingInterceptor.FORWARDED_HEADER));
+            forwardedBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = "42".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        remote.start();
+        nodeRepository.save(new ClusterNode(REMOTE_NODE, "http://localhost:" + remote.getAddress().getPort(), Instant.now()));
+        membership.heartbeat();
+    }
+
+    @AfterEach
+    void stopRemoteNode() {
+        nodeRepository.deleteById(REMOTE_NODE);
+        membership.heartbeat();
+        remote.stop(0);
+    }
+
+    @Test
+    void requestForRemoteMachine_ShouldBeForwardedToOwner() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(MachineContextInterceptor.HEADER, machineOwnedBy(REMOTE_NODE));
+
+        ResponseEntity<String> response = restTemplate.exchange("/api/vending/coins", HttpMethod.POST,
+                new HttpEntity<>("\"ONE_LV\"", headers), String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("42", response.getBody());
+        assertEquals("local", forwardedBy.get());
+        assertEquals("\"ONE_LV\"", forwardedBody.get());
+        assertFalse(machineState.isLoaded(headers.getFirst(MachineContextInterceptor.HEADER)));
+    }
+
+    @Test
+    void requestForRemoteMachine_ShouldBeRedirected_InRedirectMode() throws Exception {
+        ClusterProperties redirecting = new ClusterProperties();
+        redirecting.setNodeId(properties.getNodeId());
+        redirecting.setRoutingMode(ClusterProperties.RoutingMode.REDIRECT);
+        ClusterRoutingInterceptor interceptor = new ClusterRoutingInterceptor(redirecting, membership);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/vending/coins/total");
+        request.setQueryString("detail=true");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean handledLocally = MachineContext.callFor(machineOwnedBy(REMOTE_NODE), () -> {
+            try {
+                return interceptor.preHandle(request, response, null);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        assertFalse(handledLocally);
+        assertEquals(HttpStatus.TEMPORARY_REDIRECT.value(), response.getStatus());
+        assertEquals(membership.ownerUrl(machineOwnedBy(REMOTE_NODE)) + "/api/vending/coins/total?detail=true",
+                response.getHeader(HttpHeaders.LOCATION));
+    }
+
+    @Test
+    void releaseAndClaim_ShouldCarryQueuedCommandsAndFenceTheOldState() throws Exception {
+        String machineId = machineOwnedBy(properties.getNodeId());
+        machineState.evict(machineId);
+        sessionRepository.findById(machineId).ifPresent(sessionRepository::delete);
+        membership.ensureOwned(machineId);
+
+        List<CommandTicket> tickets = MachineContext.callFor(machineId, () -> IntStream.range(0, 20)
+                .mapToObj(i -> commandQueue.submit(new MachineCommand.InsertCoin(CoinEnum.TEN_ST)))
+                .toList());
+        handoff.release(machineId);
+
+        for (CommandTicket ticket : tickets) {
+            ticket.getResult().get(5, TimeUnit.SECONDS);
+        }
+        MachineSession session = sessionRepository.findById(machineId).orElseThrow();
+        assertEquals(20, session.getInsertedCoins().split(",").length);
+        assertNull(session.getOwnerNodeId());
+        assertFalse(handoff.isClaimed(machineId));
+        assertFalse(machineState.isLoaded(machineId));
+        assertThrows(MachineHandoffException.class, () -> MachineContext.callFor(machineId,
+                () -> commandQueue.submit(new MachineCommand.InsertCoin(CoinEnum.TEN_ST))));
+        assertThrows(MachineHandoffException.class, () -> machineState.update(machineId, s -> s.withInsertedCoins(List.of())));
+
+        handoff.claim(machineId);
+
+        assertTrue(machineState.isLoaded(machineId));
+        assertEquals(20, machineState.snapshot(machineId).insertedCoins().size());
+        machineState.update(machineId, s -> s.withInsertedCoins(List.of()));
+        assertTrue(machineState.snapshot(machineId).insertedCoins().isEmpty());
+        assertEquals(properties.getNodeId(), sessionRepository.findById(machineId).orElseThrow().getOwnerNodeId());
+    }
+
+    @Test
+    void checkpoint_ShouldFenceInsteadOfOverwriting_WhenAnotherNodeClaimedTheMachine() {
+        String machineId = machineOwnedBy(properties.getNodeId());
+        machineState.evict(machineId);
+        sessionRepository.findById(machineId).ifPresent(sessionRepository::delete);
+        membership.ensureOwned(machineId);
+        MachineSession taken = sessionRepository.findById(machineId).orElseThrow();
+        taken.setOwnerNodeId(REMOTE_NODE);
+        sessionRepository.save(taken);
+
+        machineState.update(machineId, s -> s.withInsertedCoins(List.of(CoinEnum.ONE_LV)));
+        handoff.checkpoint(machineId);
+
+        MachineSession session = sessionRepository.findById(machineId).orElseThrow();
+        assertEquals(REMOTE_NODE, session.getOwnerNodeId());
+        assertEquals("", session.getInsertedCoins());
+        assertFalse(handoff.isClaimed(machineId));
+        assertThrows(MachineHandoffException.class, () -> machineState.update(machineId, s -> s.withInsertedCoins(List.of())));
+        machineState.evict(machineId);
+    }
+
+    @Test
+    void binaryFrame_ShouldBeAnsweredNotOwner_WhenAnotherNodeOwnsTheMachine() throws Exception {
+        BinaryCommandHandler handler = new BinaryCommandHandler(vendingService, commandQueue, membership);
+        int machineId = IntStream.iterate(1, i -> i + 1)
+                .filter(i -> !membership.isLocal(String.valueOf(i)))
+                .findFirst().orElseThrow();
+        ByteBuffer response = ByteBuffer.allocate(64);
+
+        handler.handle(new BinaryFrame.Request(Opcode.INSERT_COIN.getCode(), CoinEnum.ONE_LV.ordinal(), machineId, 0), response)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(ResponseStatus.NOT_OWNER, ResponseStatus.fromCode(response.flip().get(1)));
+        assertFalse(machineState.isLoaded(String.valueOf(machineId)));
+    }
+
+    private String machineOwnedBy(String nodeId) {
+        for (int i = 0; ; i++) {
+            String machineId = "cluster-test-" + i;
+            if (nodeId.equals(REMOTE_NODE) != membership.isLocal(machineId)) {
+                return machineId;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.coffeemachine.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+    private static final int MACHINES = 10_000;
+
+    @Test
+    void ownerOf_ShouldSpreadMachinesEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < MACHINES; i++) {
+            owned.merge(ring.ownerOf("machine-" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, owned.size());
+        owned.values().forEach(count -> assertTrue(count > MACHINES / 4 * 0.8 && count < MACHINES / 4 * 1.2,
+                "unbalanced ownership " + owned));
+    }
+
+    @Test
+    void ownerOf_ShouldOnlyMoveMachinesToJoiningNode() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        int moved = 0;
+        for (int i = 0; i < MACHINES; i++) {
+            String machineId = "machine-" + i;
+            String oldOwner = before.ownerOf(machineId);
+            String newOwner = after.ownerOf(machineId);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals("d", newOwner);
+                moved++;
+            }
+        }
+
+        assertTrue(moved > MACHINES / 4 * 0.8 && moved < MACHINES / 4 * 1.2, "moved " + moved);
+    }
+
+    @Test
+    void ownerOf_ShouldReturnNull_WhenRingIsEmpty() {
+        assertNull(new ConsistentHashRing(List.of(), 128).ownerOf("machine-1"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.coffeemachine.coalescing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    private static final int CALLERS = 16;
+
+    private final SingleFlight<String, List<String>> singleFlight = new SingleFlight<>();
+    private final CountDownLatch arrived = new CountDownLatch(CALLERS);
+
+    @Test
+    void concurrentCalls_ShouldShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> catalog = List.of("Water", "Coffee");
+
+        List<Future<SingleFlight.Result<List<String>>>> results = runConcurrently(() -> singleFlight.execute("catalog", () -> {
+            executions.incrementAndGet();
+            await(release);
+            return catalog;
+        }));
+        waitUntilAllJoined(executions);
+        release.countDown();
+
+        int coalesced = 0;
+        for (Future<SingleFlight.Result<List<String>>> result : results) {
+            assertSame(catalog, result.get().value());
+            coalesced += result.get().coalesced() ? 1 : 0;
+        }
+        assertEquals(1, executions.get());
+        assertEquals(CALLERS - 1, coalesced);
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void failure_ShouldReachEveryWaiterAndNotBeCached() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        List<Future<SingleFlight.Result<List<String>>>> results = runConcurrently(() -> singleFlight.execute("catalog", () -> {
+            executions.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("database down");
+        }));
+        waitUntilAllJoined(executions);
+        release.countDown();
+
+        for (Future<SingleFlight.Result<List<String>>> result : results) {
+            Exception ex = assertThrows(Exception.class, result::get);
+            assertInstanceOf(IllegalStateException.class, ex.getCause());
+        }
+        assertEquals(List.of("Tea"), singleFlight.execute("catalog", () -> List.of("Tea")).value());
+    }
+
+    @Test
+    void differentKeys_ShouldNotShareExecutions() {
+        assertEquals(List.of("1"), singleFlight.execute("product:1", () -> List.of("1")).value());
+        assertEquals(List.of("2"), singleFlight.execute("product:2", () -> List.of("2")).value());
+        assertFalse(singleFlight.execute("product:1", () -> List.of("1")).coalesced());
+    }
+
+    private <T> List<Future<T>> runConcurrently(Callable<T> call) {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executor.submit(() -> {
+                arrived.countDown();
+                return call.call();
+            }));
+        }
+        executor.shutdown();
+        return futures;
+    }
+
+    private void waitUntilAllJoined(AtomicInteger executions) throws InterruptedException {
+        // The leader stays blocked in the call, so every caller that has arrived ends up on its flight.
+        assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, executions.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
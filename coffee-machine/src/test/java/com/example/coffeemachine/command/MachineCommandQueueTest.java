@@ -0,0 +1,156 @@
+package com.example.coffeemachine.command;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.exception.InsufficientAmountException;
+import com.example.coffeemachine.offline.OfflineModeProperties;
+import com.example.coffeemachine.protocol.BinaryCommandHandler;
+import com.example.coffeemachine.protocol.BinaryFrame;
+import com.example.coffeemachine.protocol.Opcode;
+import com.example.coffeemachine.protocol.ResponseStatus;
+import com.example.coffeemachine.repository.ProductRepository;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.state.MachineState;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "vending.commands.enabled=true")
+@ActiveProfiles("test")
+class MachineCommandQueueTest {
+    @Autowired
+    private MachineCommandQueue commandQueue;
+
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private MachineState machineState;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void refusedPurchase_ShouldNotAffectOtherCommandsOfTheBatch() throws Exception {
+        Product product = createAndSaveProduct(ItemEnum.WATER);
+        String machineId = "commands-batch";
+        machineState.evict(machineId);
+
+        List<CommandTicket> tickets = MachineContext.callFor(machineId, () -> List.of(
+                commandQueue.submit(new MachineCommand.InsertCoin(CoinEnum.TEN_ST)),
+                commandQueue.submit(new MachineCommand.BuyProduct(product.getId())),
+                commandQueue.submit(new MachineCommand.InsertCoin(CoinEnum.ONE_LV)),
+                commandQueue.submit(new MachineCommand.BuyProduct(product.getId())),
+                commandQueue.submit(new MachineCommand.ReturnCoins())));
+
+        ExecutionException refused = assertThrows(ExecutionException.class, () -> await(tickets.get(1)));
+        assertInstanceOf(InsufficientAmountException.class, refused.getCause());
+        assertEquals(Map.of(CoinEnum.FIFTY_ST, 1, CoinEnum.TEN_ST, 1), await(tickets.get(3)));
+        assertEquals(List.of(), await(tickets.get(4)));
+
+        assertEquals(4, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+        assertTrue(machineState.snapshot(machineId).insertedCoins().isEmpty());
+        assertEquals(TicketStatus.FAILED, tickets.get(1).view().status());
+        assertEquals(TicketStatus.COMPLETED, tickets.get(3).view().status());
+    }
+
+    @Test
+    void asyncPurchase_ShouldReturnTicketThatCanBePolled() throws Exception {
+        Product product = createAndSaveProduct(ItemEnum.WATER);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Machine-Id", "commands-http");
+
+        ResponseEntity<Void> inserted = restTemplate.exchange("/api/vending/coins", HttpMethod.POST,
+                new HttpEntity<>(CoinEnum.ONE_LV, headers), Void.class);
+        assertEquals(HttpStatus.OK, inserted.getStatusCode());
+
+        headers.set("Prefer", "respond-async");
+        ResponseEntity<Map> accepted = restTemplate.exchange("/api/vending/products/{id}/buy", HttpMethod.POST,
+                new HttpEntity<>(headers), Map.class, product.getId());
+        assertEquals(HttpStatus.ACCEPTED, accepted.getStatusCode());
+        assertNotNull(accepted.getHeaders().getLocation());
+
+        Map<?, ?> ticket = accepted.getBody();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ("PENDING".equals(ticket.get("status")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            ticket = restTemplate.getForObject(accepted.getHeaders().getLocation().getPath(), Map.class);
+        }
+        assertEquals("COMPLETED", ticket.get("status"));
+        assertEquals(Map.of("FIFTY_ST", 1), ticket.get("result"));
+
+        assertEquals(HttpStatus.NOT_FOUND,
+                restTemplate.getForEntity("/api/vending/tickets/{id}", Map.class, "unknown").getStatusCode());
+    }
+
+    @Test
+    void binaryFrames_ShouldBeAnsweredThroughTheMailbox() throws Exception {
+        Product product = createAndSaveProduct(ItemEnum.WATER);
+        int machineId = 4207;
+        machineState.evict(String.valueOf(machineId));
+        BinaryCommandHandler handler = new BinaryCommandHandler(vendingService, commandQueue, null);
+
+        commandQueue.close(String.valueOf(machineId));
+        ByteBuffer refused = ByteBuffer.allocate(64);
+        handler.handle(new BinaryFrame.Request(Opcode.INSERT_COIN.getCode(), CoinEnum.ONE_LV.ordinal(), machineId, 0), refused)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(ResponseStatus.NOT_OWNER, ResponseStatus.fromCode(refused.flip().get(1)));
+        commandQueue.open(String.valueOf(machineId));
+
+        ByteBuffer inserted = ByteBuffer.allocate(64);
+        ByteBuffer bought = ByteBuffer.allocate(64);
+        handler.handle(new BinaryFrame.Request(Opcode.INSERT_COIN.getCode(), CoinEnum.ONE_LV.ordinal(), machineId, 0), inserted)
+                .get(5, TimeUnit.SECONDS);
+        handler.handle(new BinaryFrame.Request(Opcode.BUY_PRODUCT.getCode(), 0, machineId, product.getId()), bought)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(ResponseStatus.OK, ResponseStatus.fromCode(inserted.flip().get(1)));
+        bought.flip();
+        assertEquals(ResponseStatus.OK, ResponseStatus.fromCode(bought.get(1)));
+        bought.position(BinaryFrame.RESPONSE_HEADER_SIZE);
+        assertEquals(Map.of(CoinEnum.FIFTY_ST, 1), BinaryFrame.readCoinCounts(bought));
+        assertEquals(4, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+    }
+
+    @Test
+    void commandQueue_ShouldRefuseToStart_WhenOfflineModeIsEnabled() {
+        OfflineModeProperties offline = new OfflineModeProperties();
+        offline.setEnabled(true);
+
+        assertThrows(IllegalStateException.class,
+                () -> new MachineCommandQueue(new CommandProperties(), null, null, offline, null));
+    }
+
+    private Object await(CommandTicket ticket) throws Exception {
+        return ticket.getResult().get(5, TimeUnit.SECONDS);
+    }
+
+    private Product createAndSaveProduct(ItemEnum itemEnum) {
+        Product product = new Product();
+        product.setProductName(itemEnum.getName());
+        product.setProductPrice(itemEnum.getPrice());
+        product.setQuantity(5);
+        return vendingService.addNewProduct(product);
+    }
+}
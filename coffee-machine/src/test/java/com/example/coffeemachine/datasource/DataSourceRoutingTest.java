@@ -0,0 +1,127 @@
+package com.example.coffeemachine.datasource;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.ItemEnum;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "vending.datasource.replica.url=" + DataSourceRoutingTest.REPLICA_URL,
+        "vending.datasource.replica.username=sa",
+        "vending.datasource.replica.password=",
+        "vending.datasource.replica.driver-class-name=org.h2.Driver"
+})
+@ActiveProfiles("test")
+class DataSourceRoutingTest {
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+    private static final String REPLICA_ONLY = "Replica Espresso";
+    private static final ParameterizedTypeReference<List<Product>> PRODUCTS = new ParameterizedTypeReference<>() {
+    };
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * The replica is a separate database with its own catalog, so every response shows which one answered.
+     */
+    @BeforeAll
+    static void seedReplica() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS products");
+            statement.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, product_name VARCHAR(255), "
+                    + "product_price INTEGER, quantity INTEGER NOT NULL, version BIGINT DEFAULT 0 NOT NULL, "
+                    + "updated_at TIMESTAMP(6) WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL)");
+            statement.execute("INSERT INTO products (id, product_name, product_price, quantity) "
+                    + "VALUES (1000, '" + REPLICA_ONLY + "', 120, 7)");
+        }
+    }
+
+    @Test
+    void readOnlyCalls_ShouldHitReplica_AndReadWriteCallsPrimary() throws SQLException {
+        double primaryBefore = routed(DataSourceTarget.PRIMARY);
+        double replicaBefore = routed(DataSourceTarget.REPLICA);
+
+        Product product = new Product();
+        product.setProductName(ItemEnum.TEA.getName());
+        product.setProductPrice(ItemEnum.TEA.getPrice());
+        product.setQuantity(5);
+        ResponseEntity<Product> added = restTemplate.postForEntity("/api/vending/products", product, Product.class);
+        assertEquals(HttpStatus.OK, added.getStatusCode());
+        assertEquals(primaryBefore + 1, routed(DataSourceTarget.PRIMARY));
+        assertEquals(0, replicaRows(ItemEnum.TEA.getName()));
+
+        List<String> names = productNames(new HttpHeaders());
+        assertTrue(names.contains(REPLICA_ONLY), names.toString());
+        assertFalse(names.contains(ItemEnum.TEA.getName()), names.toString());
+        assertEquals(replicaBefore + 1, routed(DataSourceTarget.REPLICA));
+        assertEquals(primaryBefore + 1, routed(DataSourceTarget.PRIMARY));
+    }
+
+    @Test
+    void readOnlyCalls_ShouldHitPrimary_WhenPrimaryRequired() {
+        Product product = new Product();
+        product.setProductName(ItemEnum.CAPPUCCINO.getName());
+        product.setProductPrice(ItemEnum.CAPPUCCINO.getPrice());
+        product.setQuantity(5);
+        restTemplate.postForEntity("/api/vending/products", product, Product.class);
+        double primaryBefore = routed(DataSourceTarget.PRIMARY);
+        double replicaBefore = routed(DataSourceTarget.REPLICA);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(ReadConsistencyInterceptor.HEADER, "primary");
+        List<String> names = productNames(headers);
+
+        assertTrue(names.contains(ItemEnum.CAPPUCCINO.getName()), names.toString());
+        assertFalse(names.contains(REPLICA_ONLY), names.toString());
+        assertEquals(primaryBefore + 1, routed(DataSourceTarget.PRIMARY));
+        assertEquals(replicaBefore, routed(DataSourceTarget.REPLICA));
+    }
+
+    private List<String> productNames(HttpHeaders headers) {
+        ResponseEntity<List<Product>> response = restTemplate.exchange("/api/vending/products", HttpMethod.GET,
+                new HttpEntity<>(headers), PRODUCTS);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody().stream().map(Product::getProductName).toList();
+    }
+
+    private static int replicaRows(String productName) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(
+                     "SELECT COUNT(*) FROM products WHERE product_name = '" + productName + "'")) {
+            rows.next();
+            return rows.getInt(1);
+        }
+    }
+
+    private double routed(DataSourceTarget target) {
+        return meterRegistry.get("vending.datasource.routed")
+                .tag("target", target.name().toLowerCase())
+                .counter()
+                .count();
+    }
+}
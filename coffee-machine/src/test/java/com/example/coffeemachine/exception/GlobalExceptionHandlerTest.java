@@ -0,0 +1,24 @@
+package com.example.coffeemachine.exception;
+
+import com.example.coffeemachine.entity.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GlobalExceptionHandlerTest {
+
+    @Test
+    void optimisticLockingFailure_ShouldBeAnsweredWithConflict() {
+        ResponseEntity<Map<String, Object>> response = new GlobalExceptionHandler()
+                .handleOptimisticLockingFailureException(new ObjectOptimisticLockingFailureException(Product.class, 42L));
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(409, response.getBody().get("status"));
+        assertEquals("Product with ID 42 was changed by another request, retry the update", response.getBody().get("message"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.coffeemachine.limiter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        LimiterProperties properties = new LimiterProperties();
+        properties.setInitialLimit(10);
+        properties.setMaxLimit(100);
+        limiter = new AdaptiveConcurrencyLimiter(properties);
+    }
+
+    @Test
+    void limit_ShouldGrowWhileLatencyIsStable() {
+        runAtLimit(200, 1);
+
+        assertTrue(limiter.getLimit() > 10);
+    }
+
+    @Test
+    void limit_ShouldShrinkWhenLatencyRises() {
+        runAtLimit(200, 1);
+        int limitBeforeSpike = limiter.getLimit();
+
+        runAtLimit(50, 20);
+
+        assertTrue(limiter.getLimit() < limitBeforeSpike);
+        assertTrue(limiter.getLimit() >= 2);
+    }
+
+    @Test
+    void tryAcquire_ShouldShedCatalogReadsBeforePurchases() {
+        int catalogAdmitted = 0;
+        while (limiter.tryAcquire(LimitPriority.CATALOG)) {
+            catalogAdmitted++;
+        }
+        assertEquals(6, catalogAdmitted);
+
+        int purchasesAdmitted = 0;
+        while (limiter.tryAcquire(LimitPriority.PURCHASE)) {
+            purchasesAdmitted++;
+        }
+        assertEquals(4, purchasesAdmitted);
+        assertEquals(10, limiter.getInflight());
+    }
+
+    private void runAtLimit(int rounds, long rttMillis) {
+        for (int round = 0; round < rounds; round++) {
+            int admitted = 0;
+            while (limiter.tryAcquire(LimitPriority.PURCHASE)) {
+                admitted++;
+            }
+            for (int i = 0; i < admitted; i++) {
+                limiter.release(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.coffeemachine.offline;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.repository.ProductRepository;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "vending.offline.enabled=true",
+        "vending.offline.health-check-interval=1h",
+        "vending.offline.catalog-refresh-interval=1h"})
+@ActiveProfiles("test")
+class OfflineSalesTest {
+    private static final Path JOURNAL_DIRECTORY = createTempDirectory();
+
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private MachineState machineState;
+
+    @Autowired
+    private DatabaseHealthProbe healthProbe;
+
+    @Autowired
+    private OfflineSalesService offlineSales;
+
+    @Autowired
+    private SalesReconciler reconciler;
+
+    @DynamicPropertySource
+    static void journalPath(DynamicPropertyRegistry registry) {
+        registry.add("vending.offline.journal-path", () -> JOURNAL_DIRECTORY.resolve("sales.journal").toString());
+    }
+
+    @BeforeEach
+    void setUp() {
+        machineState.clearInsertedCoins();
+        machineState.resetChange();
+    }
+
+    @AfterEach
+    void tearDown() {
+        healthProbe.check();
+        reconciler.reconcile();
+    }
+
+    @Test
+    void buyProduct_ShouldSellFromReservedStockAndReconcile_WhenDatabaseIsDown() {
+        Product product = createAndSaveProduct(ItemEnum.WATER, 5);
+        reconciler.reconcile();
+        healthProbe.markUnavailable(new SQLException("test outage"));
+
+        for (int i = 0; i < 4; i++) {
+            vendingService.insertCoin(CoinEnum.ONE_LV);
+            assertEquals(Map.of(CoinEnum.FIFTY_ST, 1), vendingService.buyProduct(product.getId()));
+        }
+        vendingService.insertCoin(CoinEnum.ONE_LV);
+        assertThrows(ProductOutOfStockException.class, () -> vendingService.buyProduct(product.getId()),
+                "the last unit is kept as safety stock");
+        assertEquals(List.of(CoinEnum.ONE_LV), vendingService.returnCoins());
+        assertEquals(4, offlineSales.getPendingSales());
+        assertEquals(5, quantityOf(product));
+        assertEquals(1, machineState.inventory().quantity(product.getId()));
+
+        healthProbe.check();
+        reconciler.reconcile();
+
+        assertTrue(healthProbe.isAvailable());
+        assertEquals(0, offlineSales.getPendingSales());
+        assertEquals(1, quantityOf(product));
+        assertEquals(1, machineState.inventory().quantity(product.getId()));
+        assertTrue(conflictsFor(product).isEmpty());
+    }
+
+    @Test
+    void reconcile_ShouldReportConflict_WhenStockWasSoldElsewhere() {
+        Product product = createAndSaveProduct(ItemEnum.WATER, 3);
+        reconciler.reconcile();
+        healthProbe.markUnavailable(new SQLException("test outage"));
+
+        for (int i = 0; i < 2; i++) {
+            vendingService.insertCoin(CoinEnum.FIFTY_ST);
+            vendingService.buyProduct(product.getId());
+        }
+        vendingService.serviceVisit(Map.of(product.getId(), 1), Map.of());
+        healthProbe.check();
+        reconciler.reconcile();
+
+        assertEquals(0, quantityOf(product));
+        List<ReconciliationConflict> conflicts = conflictsFor(product);
+        assertEquals(1, conflicts.size());
+        assertEquals(2, conflicts.get(0).soldOffline());
+        assertEquals(1, conflicts.get(0).missing());
+    }
+
+    @Test
+    void journal_ShouldDropTornRecordAndKeepSequence_WhenReopened() throws IOException {
+        OfflineModeProperties properties = new OfflineModeProperties();
+        properties.setJournalPath(JOURNAL_DIRECTORY.resolve("torn.journal").toString());
+
+        SalesJournal journal = new SalesJournal(properties);
+        journal.append(1L, 50);
+        journal.append(2L, 120);
+        journal.close();
+        try (FileChannel channel = FileChannel.open(Path.of(properties.getJournalPath()), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}));
+        }
+
+        SalesJournal reopened = new SalesJournal(properties);
+        assertEquals(2, reopened.size());
+        assertEquals(3, reopened.append(3L, 90));
+        reopened.compact(3);
+        assertEquals(0, reopened.size());
+        assertEquals(4, reopened.append(4L, 90));
+        assertEquals(List.of(4L), reopened.read(0, 10).stream().map(SalesJournalEntry::sequence).toList());
+        reopened.close();
+    }
+
+    private int quantityOf(Product product) {
+        return productRepository.findById(product.getId()).orElseThrow().getQuantity();
+    }
+
+    private List<ReconciliationConflict> conflictsFor(Product product) {
+        return reconciler.getConflicts().stream()
+                .filter(conflict -> conflict.productId() == product.getId())
+                .toList();
+    }
+
+    private Product createAndSaveProduct(ItemEnum itemEnum, int quantity) {
+        Product product = new Product();
+        product.setProductName(itemEnum.getName());
+        product.setProductPrice(itemEnum.getPrice());
+        product.setQuantity(quantity);
+        return vendingService.addNewProduct(product);
+    }
+
+    private static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("vending-offline");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.coffeemachine.profiling;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.exception.InsufficientAmountException;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineState;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class VendingProfilerTest {
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private MachineState machineState;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        machineState.clearInsertedCoins();
+        machineState.resetChange();
+    }
+
+    @Test
+    void buyProduct_ShouldRecordEveryPhase() throws Exception {
+        Product product = createAndSaveProduct(ItemEnum.WATER);
+
+        List<RecordedEvent> events = record(() -> {
+            vendingService.insertCoin(CoinEnum.ONE_LV);
+            vendingService.buyProduct(product.getId());
+            vendingService.getAllProducts();
+        });
+
+        Set<String> phases = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.example.coffeemachine.PurchasePhase"))
+                .map(e -> e.getString("phase"))
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("lookup", "change", "update", "commit"), phases);
+
+        RecordedEvent purchase = single(events, "com.example.coffeemachine.Purchase");
+        assertEquals(product.getId(), purchase.getLong("productId"));
+        assertEquals("ok", purchase.getString("outcome"));
+        assertEquals(1, purchase.getInt("insertedCoins"));
+        assertEquals(1, purchase.getInt("changeCoins"));
+
+        assertEquals(CoinEnum.ONE_LV.name(), single(events, "com.example.coffeemachine.InsertCoin").getString("coin"));
+        assertTrue(single(events, "com.example.coffeemachine.CatalogRead").getInt("productCount") >= 1);
+    }
+
+    @Test
+    void buyProduct_ShouldRecordFailedOutcome() throws Exception {
+        Product product = createAndSaveProduct(ItemEnum.COFFEE);
+
+        List<RecordedEvent> events = record(() -> {
+            vendingService.insertCoin(CoinEnum.TEN_ST);
+            assertThrows(InsufficientAmountException.class, () -> vendingService.buyProduct(product.getId()));
+        });
+
+        assertEquals("insufficient_amount", single(events, "com.example.coffeemachine.Purchase").getString("outcome"));
+    }
+
+    private List<RecordedEvent> record(Runnable action) throws Exception {
+        Path file = tempDir.resolve("test.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PurchaseEvent.class);
+            recording.enable(PurchasePhaseEvent.class);
+            recording.enable(InsertCoinEvent.class);
+            recording.enable(CatalogReadEvent.class);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    @Test
+    void dump_ShouldKeepOnlyNewestDumps() throws Exception {
+        FlightRecorderProperties properties = new FlightRecorderProperties();
+        properties.setDumpDirectory(tempDir.toString());
+        properties.setMaxDumps(2);
+        FlightRecorderService service = new FlightRecorderService(properties);
+        service.start();
+        try {
+            Path latest = null;
+            for (int i = 0; i < 4; i++) {
+                latest = service.dump();
+                Thread.sleep(5);
+            }
+
+            try (var files = Files.list(tempDir)) {
+                List<Path> kept = files.toList();
+                assertEquals(2, kept.size(), kept.toString());
+                assertTrue(kept.contains(latest));
+            }
+        } finally {
+            service.stop();
+        }
+    }
+
+    private RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+
+    private Product createAndSaveProduct(ItemEnum itemEnum) {
+        Product product = new Product();
+        product.setProductName(itemEnum.getName());
+        product.setProductPrice(itemEnum.getPrice());
+        product.setQuantity(5);
+        return vendingService.addNewProduct(product);
+    }
+}
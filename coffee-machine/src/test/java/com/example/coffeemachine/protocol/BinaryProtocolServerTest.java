@@ -0,0 +1,191 @@
+package com.example.coffeemachine.protocol;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.state.MachineState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"vending.binary.enabled=true", "vending.binary.port=0", "vending.binary.max-pipelined-requests=4"})
+@ActiveProfiles("test")
+class BinaryProtocolServerTest {
+    private static final int MACHINE_ID = 7;
+
+    @Autowired
+    private BinaryProtocolServer server;
+
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private MachineState machineState;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @BeforeEach
+    void setUp() {
+        machineState.clearInsertedCoins();
+        machineState.resetChange();
+        machineState.evict(String.valueOf(MACHINE_ID));
+    }
+
+    @Test
+    void pipelinedPurchase_ShouldMatchHttpPurchase() throws IOException {
+        Product httpProduct = createAndSaveProduct(ItemEnum.WATER);
+        Product binaryProduct = createAndSaveProduct(ItemEnum.WATER);
+
+        restTemplate.postForEntity("/api/vending/coins", CoinEnum.ONE_LV, Void.class);
+        Map<CoinEnum, Integer> httpChange = restTemplate.exchange("/api/vending/products/{id}/buy", HttpMethod.POST, null,
+                new ParameterizedTypeReference<Map<CoinEnum, Integer>>() {
+                }, httpProduct.getId()).getBody();
+
+        try (SocketChannel channel = connect()) {
+            ByteBuffer requests = ByteBuffer.allocate(3 * BinaryFrame.REQUEST_SIZE);
+            BinaryFrame.writeRequest(requests, Opcode.INSERT_COIN, CoinEnum.ONE_LV, MACHINE_ID, 0);
+            BinaryFrame.writeRequest(requests, Opcode.BUY_PRODUCT, null, MACHINE_ID, binaryProduct.getId());
+            BinaryFrame.writeRequest(requests, Opcode.TOTAL_INSERTED, null, MACHINE_ID, 0);
+            write(channel, requests);
+
+            assertEquals(ResponseStatus.OK, readResponse(channel, Opcode.INSERT_COIN, 0).status());
+
+            Response buy = readResponse(channel, Opcode.BUY_PRODUCT, BinaryFrame.COIN_COUNTS_SIZE);
+            assertEquals(ResponseStatus.OK, buy.status());
+            assertEquals(httpChange, BinaryFrame.readCoinCounts(buy.payload()));
+
+            Response total = readResponse(channel, Opcode.TOTAL_INSERTED, Integer.BYTES);
+            assertEquals(0, total.payload().getInt());
+        }
+    }
+
+    @Test
+    void failedPurchase_ShouldReportStatusAndKeepConnectionUsable() throws IOException {
+        try (SocketChannel channel = connect()) {
+            ByteBuffer requests = ByteBuffer.allocate(4 * BinaryFrame.REQUEST_SIZE);
+            BinaryFrame.writeRequest(requests, Opcode.INSERT_COIN, CoinEnum.TWO_LV, MACHINE_ID, 0);
+            BinaryFrame.writeRequest(requests, Opcode.INSERT_COIN, CoinEnum.TEN_ST, MACHINE_ID, 0);
+            BinaryFrame.writeRequest(requests, Opcode.BUY_PRODUCT, null, MACHINE_ID, 123L);
+            BinaryFrame.writeRequest(requests, Opcode.RETURN_COINS, null, MACHINE_ID, 0);
+            write(channel, requests);
+
+            readResponse(channel, Opcode.INSERT_COIN, 0);
+            readResponse(channel, Opcode.INSERT_COIN, 0);
+            assertEquals(ResponseStatus.PRODUCT_NOT_FOUND, readResponse(channel, Opcode.BUY_PRODUCT, 0).status());
+
+            Response returned = readResponse(channel, Opcode.RETURN_COINS, BinaryFrame.COIN_COUNTS_SIZE);
+            assertEquals(Map.of(CoinEnum.TWO_LV, 1, CoinEnum.TEN_ST, 1), BinaryFrame.readCoinCounts(returned.payload()));
+        }
+    }
+
+    @Test
+    void pipelineBeyondLimit_ShouldBeAnsweredCompletelyAndInOrder() throws IOException {
+        int frames = 100;
+        try (SocketChannel channel = connect()) {
+            ByteBuffer requests = ByteBuffer.allocate(frames * BinaryFrame.REQUEST_SIZE);
+            for (int i = 0; i < frames - 1; i++) {
+                BinaryFrame.writeRequest(requests, Opcode.INSERT_COIN, CoinEnum.TEN_ST, MACHINE_ID, 0);
+            }
+            BinaryFrame.writeRequest(requests, Opcode.RETURN_COINS, null, MACHINE_ID, 0);
+            write(channel, requests);
+
+            for (int i = 0; i < frames - 1; i++) {
+                assertEquals(ResponseStatus.OK, readResponse(channel, Opcode.INSERT_COIN, 0).status());
+            }
+            Response returned = readResponse(channel, Opcode.RETURN_COINS, BinaryFrame.COIN_COUNTS_SIZE);
+            assertEquals(Map.of(CoinEnum.TEN_ST, frames - 1), BinaryFrame.readCoinCounts(returned.payload()));
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void throughput_ShouldBeComparedWithHttp() throws IOException {
+        int operations = 10_000;
+
+        long httpStart = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            restTemplate.postForEntity("/api/vending/coins", CoinEnum.TEN_ST, Void.class);
+        }
+        long httpNanos = System.nanoTime() - httpStart;
+
+        long binaryStart = System.nanoTime();
+        try (SocketChannel channel = connect()) {
+            ByteBuffer requests = ByteBuffer.allocate(operations * BinaryFrame.REQUEST_SIZE);
+            for (int i = 0; i < operations; i++) {
+                BinaryFrame.writeRequest(requests, Opcode.INSERT_COIN, CoinEnum.TEN_ST, MACHINE_ID, 0);
+            }
+            write(channel, requests);
+            for (int i = 0; i < operations; i++) {
+                readResponse(channel, Opcode.INSERT_COIN, 0);
+            }
+        }
+        long binaryNanos = System.nanoTime() - binaryStart;
+
+        System.out.printf("insertCoin x %d: http %.0f ops/s, binary %.0f ops/s%n", operations,
+                operations * 1e9 / httpNanos, operations * 1e9 / binaryNanos);
+        assertEquals(operations * CoinEnum.TEN_ST.getDenomination(),
+                MachineContext.callFor(String.valueOf(MACHINE_ID), vendingService::getTotalInsertedSum));
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()));
+    }
+
+    private void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private Response readResponse(SocketChannel channel, Opcode expectedOpcode, int expectedPayload) throws IOException {
+        ByteBuffer header = readFully(channel, BinaryFrame.RESPONSE_HEADER_SIZE);
+        assertEquals(expectedOpcode.getCode(), header.get());
+        ResponseStatus status = ResponseStatus.fromCode(header.get());
+        int payloadLength = Short.toUnsignedInt(header.getShort());
+        assertEquals(MACHINE_ID, header.getInt());
+        if (status == ResponseStatus.OK) {
+            assertEquals(expectedPayload, payloadLength);
+        }
+        return new Response(status, readFully(channel, payloadLength));
+    }
+
+    private ByteBuffer readFully(SocketChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                fail("Connection closed by server");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private Product createAndSaveProduct(ItemEnum itemEnum) {
+        Product product = new Product();
+        product.setProductName(itemEnum.getName());
+        product.setProductPrice(itemEnum.getPrice());
+        product.setQuantity(5);
+        return vendingService.addNewProduct(product);
+    }
+
+    private record Response(ResponseStatus status, ByteBuffer payload) {
+    }
+}
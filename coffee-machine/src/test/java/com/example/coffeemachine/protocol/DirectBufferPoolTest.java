@@ -0,0 +1,29 @@
+package com.example.coffeemachine.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectBufferPoolTest {
+
+    @Test
+    void release_ShouldIgnoreForeignBuffersAndStayBounded() {
+        DirectBufferPool pool = new DirectBufferPool(64, 2);
+
+        pool.release(ByteBuffer.allocateDirect(128));
+        assertEquals(0, pool.getPooledCount());
+
+        pool.release(pool.acquire());
+        pool.release(ByteBuffer.allocateDirect(64));
+        pool.release(ByteBuffer.allocateDirect(64));
+        assertEquals(2, pool.getPooledCount());
+
+        pool.acquire();
+        pool.acquire();
+        assertEquals(0, pool.getPooledCount());
+        assertEquals(64, pool.acquire().capacity());
+        assertEquals(0, pool.getPooledCount());
+    }
+}
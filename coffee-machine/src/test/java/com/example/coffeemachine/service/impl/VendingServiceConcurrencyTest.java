@@ -0,0 +1,215 @@
+package com.example.coffeemachine.service.impl;
+
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.exception.InsufficientAmountException;
+import com.example.coffeemachine.exception.NotEnoughChangeException;
+import com.example.coffeemachine.exception.ProductOutOfStockException;
+import com.example.coffeemachine.repository.ProductRepository;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.state.MachineSnapshot;
+import com.example.coffeemachine.state.MachineState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs randomized, interleaved coin, purchase and return operations from many threads against the real
+ * service and H2, then checks that no money, coin or stock was created or lost.
+ * <p>
+ * Every thread draws its operations from a generator derived from the run seed, so a failing seed replays
+ * the same operation streams: {@code mvn test -Dtest=VendingServiceConcurrencyTest -Dstress.seed=42}.
+ * Thread interleaving is still up to the scheduler, so a rare failure may need a few repetitions.
+ */
+@SpringBootTest(properties = {"vending.limiter.enabled=false", "spring.jpa.show-sql=false"})
+@ActiveProfiles("test")
+class VendingServiceConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 400;
+    private static final int MACHINES = 2;
+    private static final int STOCK = 10;
+    private static final ItemEnum[] ITEMS = {ItemEnum.WATER, ItemEnum.COFFEE, ItemEnum.HOT_CHOCOLATE};
+
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private MachineState machineState;
+
+    private final List<Long> productIds = new ArrayList<>();
+    private final List<String> machineIds = new ArrayList<>();
+
+    static LongStream seeds() {
+        String seed = System.getProperty("stress.seed");
+        return seed != null ? LongStream.of(Long.parseLong(seed)) : LongStream.of(1, 7, 2024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        machineIds.forEach(machineState::evict);
+        productRepository.deleteAllById(productIds);
+        productIds.clear();
+        machineIds.clear();
+    }
+
+    @ParameterizedTest(name = "seed {0}")
+    @MethodSource("seeds")
+    void randomizedOperations_ShouldConserveMoneyCoinsAndStock(long seed) throws Exception {
+        for (int i = 0; i < ITEMS.length; i++) {
+            productIds.add(createAndSaveProduct("stress-" + seed + "-" + i, ITEMS[i]).getId());
+        }
+        for (int m = 0; m < MACHINES; m++) {
+            String machineId = "stress-" + seed + "-" + m;
+            machineIds.add(machineId);
+            machineState.evict(machineId);
+        }
+        Map<String, MachineSnapshot> initial = new HashMap<>();
+        machineIds.forEach(id -> initial.put(id, machineState.snapshot(id)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Ledger>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(seed * 31 + t);
+            futures.add(executor.submit(() -> {
+                start.await();
+                return run(random);
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "seed " + seed + ": workers did not finish");
+
+        Ledger total = new Ledger();
+        for (Future<Ledger> future : futures) {
+            total.add(future.get());
+        }
+
+        for (String machineId : machineIds) {
+            Ledger machine = total.forMachine(machineId);
+            MachineSnapshot before = initial.get(machineId);
+            MachineSnapshot after = machineState.snapshot(machineId);
+
+            assertEquals(machine.inserted,
+                    machine.returned + machine.paid + after.getTotalInserted(),
+                    "seed " + seed + ", " + machineId + ": inserted money must be returned, spent or still inserted");
+            for (CoinEnum coin : CoinEnum.values()) {
+                int dispensed = machine.dispensed.getOrDefault(coin, 0);
+                int left = after.availableChange().getOrDefault(coin, 0);
+                assertTrue(left >= 0, "seed " + seed + ", " + machineId + ": negative " + coin + " float");
+                assertEquals(before.availableChange().get(coin) - dispensed, left,
+                        "seed " + seed + ", " + machineId + ": " + coin + " dispensed twice or lost");
+            }
+        }
+
+        for (Long productId : productIds) {
+            int stock = productRepository.findById(productId).orElseThrow().getQuantity();
+            int sold = total.sold.getOrDefault(productId, 0);
+            assertTrue(stock >= 0, "seed " + seed + ": negative stock for product " + productId);
+            assertEquals(STOCK - sold, stock, "seed " + seed + ": lost or double decrement for product " + productId);
+        }
+        assertTrue(total.sold.values().stream().mapToInt(Integer::intValue).sum() > 0, "seed " + seed + ": nothing was sold");
+    }
+
+    private Ledger run(Random random) {
+        Ledger ledger = new Ledger();
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            String machineId = machineIds.get(random.nextInt(machineIds.size()));
+            Ledger machine = ledger.forMachine(machineId);
+            int operation = random.nextInt(10);
+            MachineContext.callFor(machineId, () -> {
+                if (operation < 5) {
+                    CoinEnum coin = CoinEnum.values()[random.nextInt(CoinEnum.values().length)];
+                    vendingService.insertCoin(coin);
+                    machine.inserted += coin.getDenomination();
+                } else if (operation < 8) {
+                    buy(ledger, machine, productIds.get(random.nextInt(productIds.size())));
+                } else if (operation < 9) {
+                    machine.returned += valueOf(vendingService.returnCoins());
+                } else {
+                    assertFalse(vendingService.getAllProducts().isEmpty());
+                }
+                return null;
+            });
+        }
+        return ledger;
+    }
+
+    private void buy(Ledger ledger, Ledger machine, Long productId) {
+        int price = ITEMS[productIds.indexOf(productId)].getPrice();
+        try {
+            Map<CoinEnum, Integer> change = vendingService.buyProduct(productId);
+            machine.paid += price + valueOf(change);
+            change.forEach((coin, count) -> machine.dispensed.merge(coin, count, Integer::sum));
+            ledger.sold.merge(productId, 1, Integer::sum);
+        } catch (InsufficientAmountException | NotEnoughChangeException | ProductOutOfStockException expected) {
+            // Refused purchases must leave coins and stock untouched, which the invariants verify.
+        }
+    }
+
+    private static int valueOf(List<CoinEnum> coins) {
+        return coins.stream().mapToInt(CoinEnum::getDenomination).sum();
+    }
+
+    private static int valueOf(Map<CoinEnum, Integer> coins) {
+        return coins.entrySet().stream()
+                .mapToInt(e -> e.getKey().getDenomination() * e.getValue())
+                .sum();
+    }
+
+    private Product createAndSaveProduct(String name, ItemEnum itemEnum) {
+        Product product = new Product();
+        product.setProductName(name);
+        product.setProductPrice(itemEnum.getPrice());
+        product.setQuantity(STOCK);
+        return vendingService.addNewProduct(product);
+    }
+
+    private static final class Ledger {
+        private final Map<String, Ledger> machines = new HashMap<>();
+        private final Map<Long, Integer> sold = new HashMap<>();
+        private final Map<CoinEnum, Integer> dispensed = new EnumMap<>(CoinEnum.class);
+        private int inserted;
+        private int returned;
+        /** Price plus change of every successful purchase, i.e. the inserted money it consumed. */
+        private int paid;
+
+        private Ledger forMachine(String machineId) {
+            return machines.computeIfAbsent(machineId, id -> new Ledger());
+        }
+
+        private void add(Ledger other) {
+            other.machines.forEach((id, machine) -> {
+                Ledger mine = forMachine(id);
+                mine.inserted += machine.inserted;
+                mine.returned += machine.returned;
+                mine.paid += machine.paid;
+                machine.dispensed.forEach((coin, count) -> mine.dispensed.merge(coin, count, Integer::sum));
+            });
+            other.sold.forEach((id, count) -> sold.merge(id, count, Integer::sum));
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.example.coffeemachine.exception.NotEnoughChangeException;
 import com.example.coffeemachine.exception.ProductNotFoundException;
 import com.example.coffeemachine.exception.ProductOutOfStockException;
 import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineSnapshot;
 import com.example.coffeemachine.state.MachineState;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,9 +17,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.transaction.TestTransaction;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -70,12 +74,46 @@ class VendingServiceImplTest {
         vendingMachineService.insertCoin(CoinEnum.ONE_LV);
 
         Map<CoinEnum, Integer> change = vendingMachineService.buyProduct(product.getId());
+        commit();
 
         assertEquals(1, change.get(CoinEnum.FIFTY_ST));
         assertEquals(4, vendingMachineService.getAllProducts().get(0).getQuantity());
         assertTrue(machineState.getInsertedCoins().isEmpty());
     }
 
+    @Test
+    void buyProduct_ShouldGiveCoinsBack_WhenPurchaseRollsBack() throws Exception {
+        Product product = createAndSaveProduct(ItemEnum.WATER);
+        vendingMachineService.insertCoin(CoinEnum.ONE_LV);
+
+        vendingMachineService.buyProduct(product.getId());
+
+        assertTrue(machineState.getInsertedCoins().isEmpty());
+        // Other writers of the machine do not wait for the purchase's transaction
+        CompletableFuture.runAsync(() -> vendingMachineService.insertCoin(CoinEnum.TEN_ST)).get(5, TimeUnit.SECONDS);
+        TestTransaction.flagForRollback();
+        TestTransaction.end();
+        assertEquals(List.of(CoinEnum.ONE_LV, CoinEnum.TEN_ST), machineState.getInsertedCoins());
+        assertEquals(10, machineState.getAvailableChange().get(CoinEnum.FIFTY_ST));
+        assertEquals(5, machineState.inventory().quantity(product.getId()));
+    }
+
+    @Test
+    void addProduct_ShouldAcceptProductWithoutName() {
+        Product product = new Product();
+        product.setProductPrice(100);
+        product.setQuantity(2);
+
+        Product added = vendingMachineService.addNewProduct(product);
+        Product updated = new Product();
+        updated.setQuantity(3);
+        vendingMachineService.updateProduct(added.getId(), updated);
+
+        assertEquals(3, machineState.inventory().quantity(added.getId()));
+        assertNull(machineState.getInventory().get(null).getProductName());
+        assertFalse(machineState.hasProduct(null));
+    }
+
     @Test
     void buyProduct_ShouldThrowException_WhenInsufficientAmount() {
         Product product = createAndSaveProduct(ItemEnum.COFFEE);
@@ -186,6 +224,65 @@ class VendingServiceImplTest {
         assertFalse(machineState.hasProduct(addedProduct.getProductName()));
     }
 
+    @Test
+    void machineState_ShouldPublishImmutableSnapshotOnEachWrite() {
+        MachineSnapshot before = machineState.snapshot();
+
+        vendingMachineService.insertCoin(CoinEnum.ONE_LV);
+
+        MachineSnapshot after = machineState.snapshot();
+        assertTrue(after.version() > before.version());
+        assertTrue(before.insertedCoins().isEmpty());
+        assertEquals(List.of(CoinEnum.ONE_LV), after.insertedCoins());
+        assertThrows(UnsupportedOperationException.class, () -> after.insertedCoins().add(CoinEnum.TWO_LV));
+        assertThrows(UnsupportedOperationException.class, () -> after.availableChange().put(CoinEnum.TWO_LV, 0));
+    }
+
+    @Test
+    void serviceVisit_ShouldRestockProductsAndSetCoinLevels() {
+        Product coffee = createAndSaveProduct(ItemEnum.COFFEE);
+        Product tea = createAndSaveProduct(ItemEnum.TEA);
+        long versionBefore = machineState.snapshot().version();
+
+        List<Product> restocked = vendingMachineService.serviceVisit(
+                Map.of(coffee.getId(), 10, tea.getId(), 0),
+                Map.of(CoinEnum.TEN_ST, 25, CoinEnum.TWO_LV, 3));
+        commit();
+
+        assertEquals(2, restocked.size());
+        assertTrue(machineState.hasProduct(ItemEnum.COFFEE.getName()));
+        assertFalse(machineState.hasProduct(ItemEnum.TEA.getName()));
+        assertEquals(10, machineState.getInventory().get(ItemEnum.COFFEE.getName()).getQuantity());
+        assertEquals(25, machineState.getAvailableChange().get(CoinEnum.TEN_ST));
+        assertEquals(3, machineState.getAvailableChange().get(CoinEnum.TWO_LV));
+        assertEquals(10, machineState.getAvailableChange().get(CoinEnum.ONE_LV));
+        assertEquals(versionBefore + 1, machineState.snapshot().version());
+    }
+
+    @Test
+    void serviceVisit_ShouldLeaveMachineUnchanged_WhenItRollsBack() {
+        Product coffee = createAndSaveProduct(ItemEnum.COFFEE);
+
+        vendingMachineService.serviceVisit(Map.of(coffee.getId(), 10), Map.of(CoinEnum.TEN_ST, 25));
+        TestTransaction.flagForRollback();
+        TestTransaction.end();
+
+        assertEquals(5, machineState.inventory().quantity(coffee.getId()));
+        assertEquals(10, machineState.getAvailableChange().get(CoinEnum.TEN_ST));
+    }
+
+    @Test
+    void serviceVisit_ShouldThrowException_WhenProductNotFound() {
+        Product coffee = createAndSaveProduct(ItemEnum.COFFEE);
+
+        assertThrows(ProductNotFoundException.class,
+                () -> vendingMachineService.serviceVisit(Map.of(coffee.getId(), 10, 123L, 1), Map.of()));
+    }
+
+    private static void commit() {
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+    }
 
     private Product createAndSaveProduct(ItemEnum itemEnum) {
         Product product = new Product();
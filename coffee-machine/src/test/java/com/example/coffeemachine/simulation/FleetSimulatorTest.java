@@ -0,0 +1,52 @@
+package com.example.coffeemachine.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetSimulatorTest {
+
+    @Test
+    void run_ShouldAccountForEveryCustomerAndRepeatForSameSeed() {
+        SimulationReport single = new FleetSimulator(
+                SimulationConfig.fromArgs("--machines=20", "--days=7", "--seed=42", "--threads=1")).run();
+        SimulationReport parallel = new FleetSimulator(
+                SimulationConfig.fromArgs("--machines=20", "--days=7", "--seed=42", "--threads=4")).run();
+
+        assertTrue(single.getSales() > 0);
+        assertEquals(single.getCustomers(), single.getSales() + single.getRefusedNoChange()
+                + single.getRefusedSoldOut() + single.getRefusedUnpayable());
+        assertEquals(20L * 4, single.getServiceIntervals());
+        assertEquals(single.getCustomers(), parallel.getCustomers());
+        assertEquals(single.getSales(), parallel.getSales());
+        assertEquals(single.getRefusedNoChange(), parallel.getRefusedNoChange());
+        assertEquals(single.getSecondsUntilDry(), parallel.getSecondsUntilDry());
+    }
+
+    @Test
+    void largerFloat_ShouldRefuseFewerSalesForLackOfChange() {
+        SimulationReport small = new FleetSimulator(
+                SimulationConfig.fromArgs("--machines=20", "--days=7", "--float=2")).run();
+        SimulationReport large = new FleetSimulator(
+                SimulationConfig.fromArgs("--machines=20", "--days=7", "--float=40")).run();
+
+        assertEquals(small.getCustomers(), large.getCustomers());
+        assertTrue(large.getRefusedNoChange() < small.getRefusedNoChange());
+        assertTrue(large.getRevenue() > small.getRevenue());
+    }
+
+    @Test
+    void unpayablePrice_ShouldBeRefusedWithoutCountingTheFloatAsDry() {
+        SimulationReport unpayable = new FleetSimulator(
+                SimulationConfig.fromArgs("--machines=20", "--days=7", "--float=1000", "--price.COFFEE=235")).run();
+        SimulationReport payable = new FleetSimulator(
+                SimulationConfig.fromArgs("--machines=20", "--days=7", "--float=1000", "--price.COFFEE=240",
+                        "--price.MOCCA=170")).run();
+
+        assertTrue(unpayable.getRefusedUnpayable() > 0);
+        assertEquals(0, unpayable.getRefusedNoChange());
+        assertTrue(unpayable.getSecondsUntilDry().isEmpty());
+        assertEquals(0, payable.getRefusedUnpayable());
+        assertTrue(payable.getSecondsUntilDry().isEmpty());
+    }
+}
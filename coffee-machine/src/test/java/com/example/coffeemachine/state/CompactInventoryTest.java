@@ -0,0 +1,174 @@
+package com.example.coffeemachine.state;
+
+import com.example.coffeemachine.entity.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactInventoryTest {
+
+    @ParameterizedTest(name = "offHeap {0}")
+    @ValueSource(booleans = {false, true})
+    void putAndRemove_ShouldKeepProductsSortedAndAddressable(boolean offHeap) {
+        CompactInventory inventory = new CompactInventory(new ProductNameDictionary(), offHeap);
+        for (long id = 20; id > 0; id--) {
+            inventory.put(product(id, "product-" + id, (int) id * 10, (int) id % 10));
+        }
+        inventory.put(product(7L, "espresso", 150, 3));
+
+        assertEquals(20, inventory.size());
+        assertEquals(offHeap, inventory.isOffHeap());
+        assertEquals(150, inventory.price(7L));
+        assertEquals(3, inventory.quantity(7L));
+        assertEquals(7L, inventory.idOf("espresso"));
+        assertEquals(-1, inventory.idOf("product-7"));
+        assertEquals(-1, inventory.quantity(99L));
+
+        assertTrue(inventory.remove(7L));
+        assertFalse(inventory.remove(7L));
+        assertEquals(19, inventory.size());
+        assertEquals(-1, inventory.idOf("espresso"));
+        assertEquals(80, inventory.price(8L));
+
+        Map<String, Product> products = inventory.toProducts();
+        assertEquals(19, products.size());
+        assertEquals(Long.valueOf(12L), products.get("product-12").getId());
+        assertEquals(2, products.get("product-12").getQuantity());
+    }
+
+    @ParameterizedTest(name = "offHeap {0}")
+    @ValueSource(booleans = {false, true})
+    void concurrentDecrements_ShouldNeverOversell(boolean offHeap) throws Exception {
+        int stock = 1_000;
+        int threads = 8;
+        CompactInventory inventory = new CompactInventory(new ProductNameDictionary(), offHeap);
+        inventory.put(product(1L, "water", 50, stock));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> sold = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            sold.add(executor.submit(() -> {
+                start.await();
+                int count = 0;
+                for (int i = 0; i < stock; i++) {
+                    if (inventory.decrement(1L)) {
+                        count++;
+                    }
+                    if (i % 64 == 0) {
+                        inventory.put(product(100L + i, "filler-" + i, 10, 1));
+                    }
+                }
+                return count;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        int total = 0;
+        for (Future<Integer> future : sold) {
+            total += future.get();
+        }
+        assertEquals(stock, total);
+        assertEquals(0, inventory.quantity(1L));
+        assertFalse(inventory.decrement(1L));
+    }
+
+    @Test
+    void names_ShouldBeInternedOnceAcrossMachines() {
+        ProductNameDictionary names = new ProductNameDictionary();
+        CompactInventory first = new CompactInventory(names, false);
+        CompactInventory second = new CompactInventory(names, false);
+        first.put(product(1L, "coffee", 100, 5));
+        second.put(product(2L, "coffee", 100, 5));
+
+        assertEquals(1, names.size());
+        assertEquals("coffee", second.toProducts().keySet().iterator().next());
+    }
+
+    @Test
+    void putIfNewer_ShouldIgnoreRowsNotNewerThanTheHeldOne() {
+        CompactInventory inventory = new CompactInventory(new ProductNameDictionary(), false);
+        Product sold = product(1L, "water", 50, 4);
+        sold.setVersion(3L);
+        Product stale = product(1L, "water", 50, 5);
+        stale.setVersion(2L);
+
+        assertTrue(inventory.putIfNewer(sold));
+        assertFalse(inventory.putIfNewer(stale));
+        assertFalse(inventory.putIfNewer(sold));
+        assertEquals(4, inventory.quantity(1L));
+        assertEquals(3L, inventory.version(1L));
+        assertEquals(-1, inventory.version(2L));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void footprint_ShouldBeComparedWithProductMaps() {
+        int machines = 2_000;
+        int products = 200;
+
+        System.gc();
+        long baseline = usedHeap();
+        List<Map<String, Product>> maps = new ArrayList<>(machines);
+        for (int m = 0; m < machines; m++) {
+            Map<String, Product> map = new HashMap<>();
+            for (long id = 0; id < products; id++) {
+                map.put("product-" + id, product(id, "product-" + id, 100, 5));
+            }
+            maps.add(map);
+        }
+        System.gc();
+        long mapBytes = usedHeap() - baseline;
+        maps.clear();
+
+        System.gc();
+        baseline = usedHeap();
+        ProductNameDictionary names = new ProductNameDictionary();
+        List<CompactInventory> inventories = new ArrayList<>(machines);
+        long columnBytes = 0;
+        for (int m = 0; m < machines; m++) {
+            CompactInventory inventory = new CompactInventory(names, false);
+            for (long id = 0; id < products; id++) {
+                inventory.put(product(id, "product-" + id, 100, 5));
+            }
+            inventories.add(inventory);
+            columnBytes += inventory.footprintBytes();
+        }
+        System.gc();
+        long compactBytes = usedHeap() - baseline;
+
+        System.out.printf("%d machines x %d products: maps %.1f MB, compact %.1f MB (columns %.1f MB)%n",
+                machines, products, mapBytes / 1e6, compactBytes / 1e6, columnBytes / 1e6);
+        assertEquals(machines, inventories.size());
+        assertTrue(compactBytes < mapBytes);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Product product(Long id, String name, int price, int quantity) {
+        Product product = new Product();
+        product.setId(id);
+        product.setProductName(name);
+        product.setProductPrice(price);
+        product.setQuantity(quantity);
+        return product;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.coffeemachine.sync;
+
+import com.example.coffeemachine.entity.Coin;
+import com.example.coffeemachine.entity.Product;
+import com.example.coffeemachine.enums.CoinEnum;
+import com.example.coffeemachine.enums.ItemEnum;
+import com.example.coffeemachine.repository.CoinRepository;
+import com.example.coffeemachine.repository.ProductRepository;
+import com.example.coffeemachine.service.VendingService;
+import com.example.coffeemachine.state.MachineContext;
+import com.example.coffeemachine.state.MachineSnapshot;
+import com.example.coffeemachine.state.MachineState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"vending.sync.enabled=true", "vending.sync.interval=1h", "vending.sync.batch-size=2"})
+@ActiveProfiles("test")
+class DeltaSyncServiceTest {
+    private static final String MACHINE_ID = "sync-test";
+    private static final String FRESH_MACHINE_ID = "sync-fresh";
+
+    @Autowired
+    private DeltaSyncService deltaSync;
+
+    @Autowired
+    private VendingService vendingService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CoinRepository coinRepository;
+
+    @Autowired
+    private MachineState machineState;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Long> productIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        machineState.evict(MACHINE_ID);
+        machineState.resetChange();
+        deltaSync.sync();
+    }
+
+    @AfterEach
+    void tearDown() {
+        machineState.evict(MACHINE_ID);
+        machineState.evict(FRESH_MACHINE_ID);
+        machineState.resetChange();
+        productRepository.deleteAllById(productIds);
+        coinRepository.deleteAll();
+    }
+
+    @Test
+    void sqlEdit_ShouldReachMachineAndBeReportedAsDivergence() {
+        Product product = addProduct("sync-water");
+        addProduct("sync-coffee");
+        addProduct("sync-tea");
+        deltaSync.sync();
+
+        jdbcTemplate.update("UPDATE products SET quantity = 2, product_price = 70, "
+                + "version = version + 1, updated_at = CURRENT_TIMESTAMP WHERE id = ?", product.getId());
+        assertEquals(1, deltaSync.sync());
+
+        assertEquals(2, machineState.inventory(MACHINE_ID).quantity(product.getId()));
+        assertEquals(70, machineState.inventory(MACHINE_ID).price(product.getId()));
+        StateDivergence divergence = deltaSync.getDivergences().stream()
+                .filter(d -> d.machineId().equals(MACHINE_ID))
+                .findFirst().orElseThrow();
+        assertEquals("products", divergence.table());
+        assertEquals(String.valueOf(product.getId()), divergence.key());
+    }
+
+    @Test
+    void sync_ShouldOnlyApplyRowsChangedSinceLastPass() {
+        Product product = addProduct("sync-delta");
+        deltaSync.sync();
+        long divergences = divergencesOf(MACHINE_ID);
+
+        assertEquals(0, deltaSync.sync());
+
+        long version = productRepository.findById(product.getId()).orElseThrow().getVersion();
+        MachineContext.callFor(MACHINE_ID, () -> {
+            vendingService.insertCoin(CoinEnum.TWO_LV);
+            return vendingService.buyProduct(product.getId());
+        });
+        Product sold = productRepository.findById(product.getId()).orElseThrow();
+        assertEquals(version + 1, sold.getVersion());
+        assertEquals(sold.getVersion(), machineState.inventory(MACHINE_ID).version(product.getId()));
+
+        assertEquals(1, deltaSync.sync());
+        assertEquals(4, machineState.inventory(MACHINE_ID).quantity(product.getId()));
+        // The machine that sold it already holds the new quantity; the others catch up through the sync.
+        assertEquals(divergences, divergencesOf(MACHINE_ID));
+    }
+
+    @Test
+    void sqlInsert_ShouldReachLoadedMachines_AndNewMachinesGetWholeCatalog() {
+        Product known = addProduct("sync-known");
+        deltaSync.sync();
+
+        jdbcTemplate.update("INSERT INTO products (product_name, product_price, quantity) VALUES ('sync-inserted', 90, 6)");
+        Long insertedId = jdbcTemplate.queryForObject("SELECT id FROM products WHERE product_name = 'sync-inserted'", Long.class);
+        productIds.add(insertedId);
+        jdbcTemplate.update("INSERT INTO products (quantity) VALUES (1)");
+        productIds.add(jdbcTemplate.queryForObject("SELECT id FROM products WHERE product_name IS NULL", Long.class));
+        assertEquals(2, deltaSync.sync());
+
+        assertEquals(6, machineState.inventory(MACHINE_ID).quantity(insertedId));
+        assertEquals(90, machineState.inventory(MACHINE_ID).price(insertedId));
+
+        machineState.snapshot(FRESH_MACHINE_ID);
+        deltaSync.sync();
+        assertEquals(5, machineState.inventory(FRESH_MACHINE_ID).quantity(known.getId()));
+        assertEquals(6, machineState.inventory(FRESH_MACHINE_ID).quantity(insertedId));
+    }
+
+    @Test
+    void coinEdit_ShouldUpdateFloatOfItsOwnMachineOnly() {
+        machineState.snapshot(MACHINE_ID);
+        coinRepository.save(new Coin(MACHINE_ID, CoinEnum.ONE_LV, 10));
+        coinRepository.save(new Coin(MachineContext.DEFAULT_MACHINE_ID, CoinEnum.ONE_LV, 10));
+        deltaSync.sync();
+
+        jdbcTemplate.update("UPDATE coins SET quantity = 3, version = version + 1, updated_at = CURRENT_TIMESTAMP "
+                + "WHERE coin = 'ONE_LV' AND machine_id = ?", MACHINE_ID);
+        assertEquals(1, deltaSync.sync());
+
+        assertEquals(3, machineState.snapshot(MACHINE_ID).availableChange().get(CoinEnum.ONE_LV));
+        assertEquals(10, machineState.snapshot(MachineContext.DEFAULT_MACHINE_ID).availableChange().get(CoinEnum.ONE_LV));
+        StateDivergence divergence = deltaSync.getDivergences().get(0);
+        assertEquals("coins", divergence.table());
+        assertEquals(MACHINE_ID, divergence.machineId());
+    }
+
+    @Test
+    void rowReadBeforePurchase_ShouldNotUndoIt() {
+        Product product = addProduct("sync-stale");
+        deltaSync.sync();
+        Product stale = productRepository.findById(product.getId()).orElseThrow();
+
+        MachineContext.callFor(MACHINE_ID, () -> {
+            vendingService.insertCoin(CoinEnum.TWO_LV);
+            return vendingService.buyProduct(product.getId());
+        });
+
+        assertFalse(machineState.inventory(MACHINE_ID).putIfNewer(stale));
+        assertEquals(4, machineState.inventory(MACHINE_ID).quantity(product.getId()));
+    }
+
+    @Test
+    void coinRowsOlderThanRestoredCheckpoint_ShouldNotOverwriteFloat() {
+        coinRepository.save(new Coin(MACHINE_ID, CoinEnum.ONE_LV, 10));
+        Instant checkpointedAt = coinRepository.findByMachineId(MACHINE_ID).get(0).getUpdatedAt();
+        machineState.restore(MACHINE_ID, MachineSnapshot.initial(Map.of(CoinEnum.ONE_LV, 4)), checkpointedAt);
+
+        deltaSync.sync();
+        assertEquals(4, machineState.snapshot(MACHINE_ID).availableChange().get(CoinEnum.ONE_LV));
+
+        jdbcTemplate.update("UPDATE coins SET quantity = 3, version = version + 1, updated_at = ? "
+                + "WHERE coin = 'ONE_LV' AND machine_id = ?", Timestamp.from(checkpointedAt.plusSeconds(1)), MACHINE_ID);
+        deltaSync.sync();
+        assertEquals(3, machineState.snapshot(MACHINE_ID).availableChange().get(CoinEnum.ONE_LV));
+    }
+
+    private long divergencesOf(String machineId) {
+        return deltaSync.getDivergences().stream()
+                .filter(divergence -> divergence.machineId().equals(machineId))
+                .count();
+    }
+
+    private Product addProduct(String name) {
+        Product product = new Product();
+        product.setProductName(name);
+        product.setProductPrice(ItemEnum.WATER.getPrice());
+        product.setQuantity(5);
+        Product saved = MachineContext.callFor(MACHINE_ID, () -> vendingService.addNewProduct(product));
+        productIds.add(saved.getId());
+        return saved;
+    }
+}